@@ -0,0 +1,38 @@
+package com.ellep.runningcompanion;
+
+// Step detector for devices without TYPE_STEP_DETECTOR. A step is a peak of
+// the smoothed acceleration magnitude above gravity, with hysteresis and a
+// minimum time between steps.
+public class AccelerometerStepDetector {
+    private final double GRAVITY = 9.80665;
+    private final double SMOOTHING = 0.3;
+    private final double STEP_THRESHOLD = 1.5;
+    private final double RESET_THRESHOLD = 0.5;
+    private final long MIN_MS_BETWEEN_STEPS = 250;
+
+    private double smoothedMagnitude = Double.NaN;
+    private boolean aboveThreshold = false;
+    private long lastStepTime = Long.MIN_VALUE;
+
+    // Returns true when the sample completes a step
+    public boolean addSample(long time, double x, double y, double z) {
+        double magnitude = Math.sqrt(x * x + y * y + z * z) - GRAVITY;
+        if (Double.isNaN(smoothedMagnitude)) {
+            smoothedMagnitude = magnitude;
+        } else {
+            smoothedMagnitude += SMOOTHING * (magnitude - smoothedMagnitude);
+        }
+
+        if (!aboveThreshold && smoothedMagnitude > STEP_THRESHOLD) {
+            aboveThreshold = true;
+            if (time - lastStepTime >= MIN_MS_BETWEEN_STEPS) {
+                lastStepTime = time;
+                return true;
+            }
+        } else if (aboveThreshold && smoothedMagnitude < RESET_THRESHOLD) {
+            aboveThreshold = false;
+        }
+
+        return false;
+    }
+}
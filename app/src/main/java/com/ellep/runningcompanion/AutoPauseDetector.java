@@ -0,0 +1,115 @@
+package com.ellep.runningcompanion;
+
+// Incremental stationary detector. Every fix is checked against its reported
+// speed (when the speed accuracy is good enough to be trusted) and against the
+// cluster of recent fixes, so GPS jitter around a standing runner doesn't count
+// as movement. Runs in O(1) per fix.
+public class AutoPauseDetector {
+    private final double STOPPED_SPEED = 0.6;
+    private final double MOVING_SPEED = 1.2;
+    private final double MAX_SPEED_ACCURACY = 1.0;
+    private final double STATIONARY_RADIUS = 5.0;
+    private final double RESUME_RADIUS = 10.0;
+    private final long MS_STATIONARY_BEFORE_PAUSE = 4000;
+    private final long MS_MOVING_BEFORE_RESUME = 2000;
+
+    private boolean paused = false;
+
+    // Cluster of fixes that stayed within STATIONARY_RADIUS of its first fix,
+    // along with their mean position
+    private long clusterStartTime = -1;
+    private int clusterSize = 0;
+    private double anchorLat = 0;
+    private double anchorLon = 0;
+    private double clusterLat = 0;
+    private double clusterLon = 0;
+
+    private long movingSince = -1;
+
+    private long lastFixTime = -1;
+    private long movingTime = 0;
+
+    public void reset() {
+        paused = false;
+        clusterStartTime = -1;
+        clusterSize = 0;
+        movingSince = -1;
+        lastFixTime = -1;
+        movingTime = 0;
+    }
+
+    public void addFix(long time, double latitude, double longitude, boolean hasSpeed, double speed, double speedAccuracy) {
+        if (lastFixTime >= 0 && time <= lastFixTime) {
+            return;
+        }
+
+        if (lastFixTime >= 0 && !paused) {
+            movingTime += time - lastFixTime;
+        }
+        lastFixTime = time;
+
+        boolean speedReliable = hasSpeed && speedAccuracy > 0 && speedAccuracy <= MAX_SPEED_ACCURACY;
+
+        if (paused) {
+            double distanceFromCluster = Utils.distanceMeters(clusterLat, clusterLon, latitude, longitude);
+
+            boolean movingBySpeed = speedReliable && speed >= MOVING_SPEED;
+            if (movingBySpeed) {
+                if (movingSince < 0) {
+                    movingSince = time;
+                }
+            } else {
+                movingSince = -1;
+            }
+
+            boolean resumedBySpeed = movingSince >= 0 && time - movingSince >= MS_MOVING_BEFORE_RESUME;
+            boolean resumedByDisplacement = distanceFromCluster > RESUME_RADIUS;
+            if (resumedBySpeed || resumedByDisplacement) {
+                paused = false;
+                movingSince = -1;
+                startCluster(time, latitude, longitude);
+            }
+            return;
+        }
+
+        boolean stoppedBySpeed = !speedReliable || speed < STOPPED_SPEED;
+        if (!stoppedBySpeed || clusterSize == 0 || Utils.distanceMeters(anchorLat, anchorLon, latitude, longitude) > STATIONARY_RADIUS) {
+            startCluster(time, latitude, longitude);
+            return;
+        }
+
+        // Running mean of the cluster position
+        clusterSize++;
+        clusterLat += (latitude - clusterLat) / clusterSize;
+        clusterLon += (longitude - clusterLon) / clusterSize;
+
+        if (time - clusterStartTime >= MS_STATIONARY_BEFORE_PAUSE) {
+            paused = true;
+            movingSince = -1;
+        }
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public long getMovingTime() {
+        return movingTime;
+    }
+
+    public long getMovingTime(long now) {
+        if (paused || lastFixTime < 0 || now < lastFixTime) {
+            return movingTime;
+        }
+        return movingTime + (now - lastFixTime);
+    }
+
+    private void startCluster(long time, double latitude, double longitude) {
+        clusterStartTime = time;
+        clusterSize = 1;
+        anchorLat = latitude;
+        anchorLon = longitude;
+        clusterLat = latitude;
+        clusterLon = longitude;
+    }
+}
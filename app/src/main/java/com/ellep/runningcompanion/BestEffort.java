@@ -0,0 +1,27 @@
+package com.ellep.runningcompanion;
+
+public class BestEffort {
+    private final double distance;
+    private final double duration;
+    private final long startTime;
+
+    public BestEffort(double distance, double duration, long startTime) {
+        this.distance = distance;
+        this.duration = duration;
+        this.startTime = startTime;
+    }
+
+    // Effort distance, in meters
+    public double getDistance() {
+        return distance;
+    }
+
+    // Time taken to cover the distance, in seconds
+    public double getDuration() {
+        return duration;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+}
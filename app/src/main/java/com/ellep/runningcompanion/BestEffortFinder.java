@@ -0,0 +1,105 @@
+package com.ellep.runningcompanion;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Finds the fastest segment of a given distance in a track with a two-pointer
+// sweep over the cumulative distance, in O(n) per distance. Positions between
+// points are interpolated linearly, so the best segment always has one of its
+// ends on a point: one sweep fixes the end on each point and another fixes
+// the start.
+public class BestEffortFinder {
+    public static final double[] STANDARD_DISTANCES = {1000, 5000, 10000};
+
+    private final long[] times;
+    private final double[] distances;
+
+    public BestEffortFinder(List<TrackPoint> track) {
+        times = new long[track.size()];
+        distances = new double[track.size()];
+
+        TrackPoint lastPoint = null;
+        for (int i = 0; i < track.size(); i++) {
+            TrackPoint point = track.get(i);
+            times[i] = point.getTime();
+            distances[i] = lastPoint == null ? 0 : distances[i - 1] + Utils.distanceMeters(
+                    lastPoint.getLatitude(), lastPoint.getLongitude(), point.getLatitude(), point.getLongitude());
+            lastPoint = point;
+        }
+    }
+
+    public List<BestEffort> findAll(double[] effortDistances) {
+        List<BestEffort> efforts = new ArrayList<>();
+        for (double distance : effortDistances) {
+            BestEffort effort = find(distance);
+            if (effort != null) {
+                efforts.add(effort);
+            }
+        }
+        return efforts;
+    }
+
+    // Returns null when the track is shorter than the distance
+    public BestEffort find(double distance) {
+        int count = distances.length;
+        if (count < 2 || distances[count - 1] < distance) {
+            return null;
+        }
+
+        double bestDuration = Double.POSITIVE_INFINITY;
+        double bestStart = 0;
+
+        // Segments ending on point j, starting between points i and i + 1
+        int i = 0;
+        for (int j = 1; j < count; j++) {
+            double startDistance = distances[j] - distance;
+            if (startDistance < 0) {
+                continue;
+            }
+            while (distances[i + 1] <= startDistance) {
+                i++;
+            }
+
+            double startTime = interpolateTime(i, startDistance);
+            if (times[j] - startTime < bestDuration) {
+                bestDuration = times[j] - startTime;
+                bestStart = startTime;
+            }
+        }
+
+        // Segments starting on point i, ending between points j - 1 and j
+        int j = 1;
+        for (i = 0; i < count; i++) {
+            double endDistance = distances[i] + distance;
+            if (endDistance > distances[count - 1]) {
+                break;
+            }
+            while (distances[j] < endDistance) {
+                j++;
+            }
+
+            double endTime = interpolateTime(j - 1, endDistance);
+            if (endTime - times[i] < bestDuration) {
+                bestDuration = endTime - times[i];
+                bestStart = times[i];
+            }
+        }
+
+        return new BestEffort(distance, bestDuration / 1000.0, Math.round(bestStart));
+    }
+
+    // Time at the given distance, between point index and the next one
+    private double interpolateTime(int index, double distance) {
+        if (index + 1 >= distances.length) {
+            return times[index];
+        }
+
+        double segment = distances[index + 1] - distances[index];
+        if (segment <= 0) {
+            return times[index];
+        }
+
+        double fraction = (distance - distances[index]) / segment;
+        return times[index] + fraction * (times[index + 1] - times[index]);
+    }
+}
@@ -0,0 +1,159 @@
+package com.ellep.runningcompanion;
+
+public class CurrentPaceEstimator {
+    private final int INITIAL_CAPACITY = 64;
+
+    // Samples are kept in a ring buffer, indexed by an ever increasing sequence
+    // number. Everything between firstSeq and nextSeq is retained (enough to
+    // cover the largest window), windowSeq marks the first sample of the
+    // current window.
+    private long[] times = new long[INITIAL_CAPACITY];
+    private double[] distances = new double[INITIAL_CAPACITY];
+    private long firstSeq = 0;
+    private long windowSeq = 0;
+    private long nextSeq = 0;
+
+    private final int maxWindowSeconds;
+    private int windowSeconds;
+
+    private double totalDistance = 0;
+
+    private double smoothingFactor = 0;
+    private double smoothedPace = Double.NaN;
+
+    public CurrentPaceEstimator(int maxWindowSeconds, int windowSeconds) {
+        this.maxWindowSeconds = maxWindowSeconds;
+        this.windowSeconds = Math.min(windowSeconds, maxWindowSeconds);
+    }
+
+    public void addSample(long time, double segmentDistanceMeters) {
+        totalDistance += segmentDistanceMeters;
+
+        if (nextSeq - firstSeq == times.length) {
+            grow();
+        }
+
+        int index = indexOf(nextSeq);
+        times[index] = time;
+        distances[index] = totalDistance;
+        nextSeq++;
+
+        evictOlderThan(time);
+        smoothPace(getRawPace());
+    }
+
+    public void setWindowSeconds(int windowSeconds) {
+        this.windowSeconds = Math.min(windowSeconds, maxWindowSeconds);
+        if (isEmpty()) {
+            return;
+        }
+
+        long windowStart = getLastTime() - this.windowSeconds * 1000L;
+        while (windowSeq > firstSeq && times[indexOf(windowSeq - 1)] >= windowStart) {
+            windowSeq--;
+        }
+        while (windowSeq < nextSeq && times[indexOf(windowSeq)] < windowStart) {
+            windowSeq++;
+        }
+
+        smoothedPace = Double.NaN;
+        smoothPace(getRawPace());
+    }
+
+    public int getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    public void setSmoothingFactor(double smoothingFactor) {
+        this.smoothingFactor = smoothingFactor;
+        this.smoothedPace = Double.NaN;
+    }
+
+    public void reset() {
+        firstSeq = windowSeq = nextSeq = 0;
+        totalDistance = 0;
+        smoothedPace = Double.NaN;
+    }
+
+    // Pace in fractional minutes per kilometer over the current window
+    public double getPace(long now) {
+        if (isEmpty() || now - getLastTime() > windowSeconds * 1000L) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        if (smoothingFactor > 0 && !Double.isNaN(smoothedPace)) {
+            return smoothedPace;
+        }
+
+        return getRawPace();
+    }
+
+    public double getWindowDistance() {
+        if (isEmpty()) {
+            return 0;
+        }
+
+        return distances[indexOf(nextSeq - 1)] - distances[indexOf(windowSeq)];
+    }
+
+    public long getWindowTime() {
+        if (isEmpty()) {
+            return 0;
+        }
+
+        return getLastTime() - times[indexOf(windowSeq)];
+    }
+
+    private double getRawPace() {
+        double distanceKm = getWindowDistance() / 1000.0;
+        double timeMin = getWindowTime() / 60000.0;
+        return timeMin / distanceKm;
+    }
+
+    private void smoothPace(double rawPace) {
+        if (smoothingFactor <= 0 || Double.isNaN(rawPace) || Double.isInfinite(rawPace)) {
+            return;
+        }
+
+        if (Double.isNaN(smoothedPace)) {
+            smoothedPace = rawPace;
+        } else {
+            smoothedPace += smoothingFactor * (rawPace - smoothedPace);
+        }
+    }
+
+    private void evictOlderThan(long time) {
+        long windowStart = time - windowSeconds * 1000L;
+        while (windowSeq < nextSeq && times[indexOf(windowSeq)] < windowStart) {
+            windowSeq++;
+        }
+
+        long retainStart = time - maxWindowSeconds * 1000L;
+        while (firstSeq < windowSeq && times[indexOf(firstSeq)] < retainStart) {
+            firstSeq++;
+        }
+    }
+
+    private boolean isEmpty() {
+        return windowSeq == nextSeq;
+    }
+
+    private long getLastTime() {
+        return times[indexOf(nextSeq - 1)];
+    }
+
+    private int indexOf(long seq) {
+        return (int) (seq & (times.length - 1));
+    }
+
+    private void grow() {
+        long[] newTimes = new long[times.length * 2];
+        double[] newDistances = new double[distances.length * 2];
+        for (long seq = firstSeq; seq < nextSeq; seq++) {
+            newTimes[(int) (seq & (newTimes.length - 1))] = times[indexOf(seq)];
+            newDistances[(int) (seq & (newDistances.length - 1))] = distances[indexOf(seq)];
+        }
+        times = newTimes;
+        distances = newDistances;
+    }
+}
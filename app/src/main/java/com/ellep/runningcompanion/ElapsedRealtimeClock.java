@@ -0,0 +1,18 @@
+package com.ellep.runningcompanion;
+
+import android.os.SystemClock;
+
+// Milliseconds since boot, the base of Location.getElapsedRealtimeNanos and
+// of sensor event timestamps. It keeps counting in deep sleep and never jumps
+// when the wall clock is changed, so windows and time groups stay correct.
+public class ElapsedRealtimeClock implements RunnerClock {
+    @Override
+    public long now() {
+        return SystemClock.elapsedRealtimeNanos() / 1000000;
+    }
+
+    @Override
+    public long getWallOffset() {
+        return System.currentTimeMillis() - now();
+    }
+}
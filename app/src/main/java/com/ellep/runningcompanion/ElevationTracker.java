@@ -0,0 +1,94 @@
+package com.ellep.runningcompanion;
+
+// Fuses barometric and GPS altitude and accumulates ascent and descent.
+// With a barometer, the pressure altitude gives the short term changes and
+// GPS slowly corrects its offset (complementary filter). Without one, GPS
+// altitude is low-pass filtered. Changes smaller than the hysteresis
+// threshold are treated as noise.
+public class ElevationTracker {
+    private final double HYSTERESIS_THRESHOLD = 3.0;
+    private final double BAROMETER_SMOOTHING = 0.2;
+    private final double GPS_OFFSET_GAIN = 0.05;
+    private final double GPS_ONLY_GAIN = 0.3;
+    private final double STANDARD_PRESSURE = 1013.25;
+
+    private double pressureAltitude = Double.NaN;
+    private double barometerOffset = Double.NaN;
+
+    private double altitude = Double.NaN;
+    private double referenceAltitude = Double.NaN;
+    private double ascent = 0;
+    private double descent = 0;
+
+    public void resetTotals() {
+        referenceAltitude = altitude;
+        ascent = 0;
+        descent = 0;
+    }
+
+    public void addPressure(double pressureHpa) {
+        double rawAltitude = 44330.0 * (1.0 - Math.pow(pressureHpa / STANDARD_PRESSURE, 1.0 / 5.255));
+        if (Double.isNaN(pressureAltitude)) {
+            pressureAltitude = rawAltitude;
+        } else {
+            pressureAltitude += BAROMETER_SMOOTHING * (rawAltitude - pressureAltitude);
+        }
+
+        if (!Double.isNaN(barometerOffset)) {
+            update(pressureAltitude + barometerOffset);
+        }
+    }
+
+    public void addGpsAltitude(double gpsAltitude, double verticalAccuracy) {
+        if (!Double.isNaN(pressureAltitude)) {
+            double offset = gpsAltitude - pressureAltitude;
+            if (Double.isNaN(barometerOffset)) {
+                barometerOffset = offset;
+                update(pressureAltitude + barometerOffset);
+            } else {
+                // Less accurate fixes pull the offset more gently
+                barometerOffset += GPS_OFFSET_GAIN / Math.max(1.0, verticalAccuracy) * (offset - barometerOffset);
+            }
+            return;
+        }
+
+        if (Double.isNaN(altitude)) {
+            update(gpsAltitude);
+        } else {
+            update(altitude + GPS_ONLY_GAIN * (gpsAltitude - altitude));
+        }
+    }
+
+    public boolean hasBarometer() {
+        return !Double.isNaN(pressureAltitude);
+    }
+
+    public double getAltitude() {
+        return altitude;
+    }
+
+    public double getAscent() {
+        return ascent;
+    }
+
+    public double getDescent() {
+        return descent;
+    }
+
+    private void update(double newAltitude) {
+        altitude = newAltitude;
+        if (Double.isNaN(referenceAltitude)) {
+            referenceAltitude = newAltitude;
+            return;
+        }
+
+        double difference = newAltitude - referenceAltitude;
+        if (difference >= HYSTERESIS_THRESHOLD) {
+            ascent += difference;
+            referenceAltitude = newAltitude;
+        } else if (difference <= -HYSTERESIS_THRESHOLD) {
+            descent -= difference;
+            referenceAltitude = newAltitude;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.ellep.runningcompanion;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class FixLogReader implements Closeable {
+    private final DataInputStream input;
+
+    public FixLogReader(InputStream inputStream) throws IOException {
+        input = new DataInputStream(new BufferedInputStream(inputStream));
+        if (input.readInt() != FixLogWriter.MAGIC) {
+            throw new IOException("Not a fix log");
+        }
+    }
+
+    // Returns null once the end of the log is reached
+    public RunnerLocationReport read() throws IOException {
+        String source;
+        try {
+            source = input.readUTF();
+        } catch (EOFException error) {
+            return null;
+        }
+
+        long time = input.readLong();
+        double latitude = input.readDouble();
+        double longitude = input.readDouble();
+        double altitude = input.readDouble();
+        float accuracy = input.readFloat();
+        float verticalAccuracy = input.readFloat();
+        float speed = input.readFloat();
+        float speedAccuracy = input.readFloat();
+        return new RunnerLocationReport(source, time, latitude, longitude, altitude, accuracy, verticalAccuracy, speed, speedAccuracy);
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
@@ -0,0 +1,8 @@
+package com.ellep.runningcompanion;
+
+import java.io.IOException;
+
+// A fix log opened on the thread that replays it
+public interface FixLogSource {
+    FixLogReader open() throws IOException;
+}
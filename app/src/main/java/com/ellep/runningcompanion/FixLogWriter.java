@@ -0,0 +1,40 @@
+package com.ellep.runningcompanion;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Raw fix log, one record per received report, used to replay runs
+public class FixLogWriter implements Closeable {
+    public static final int MAGIC = 0x50524678;
+
+    private final DataOutputStream output;
+
+    public FixLogWriter(OutputStream outputStream) throws IOException {
+        output = new DataOutputStream(new BufferedOutputStream(outputStream));
+        output.writeInt(MAGIC);
+    }
+
+    public void write(RunnerLocationReport report) throws IOException {
+        output.writeUTF(report.getSource() != null ? report.getSource() : "");
+        output.writeLong(report.getTime());
+        output.writeDouble(report.getLatitude());
+        output.writeDouble(report.getLongitude());
+        output.writeDouble(report.getAltitude());
+        output.writeFloat(report.getAccuracy());
+        output.writeFloat(report.getVerticalAccuracy());
+        output.writeFloat(report.getSpeed());
+        output.writeFloat(report.getSpeedAccuracy());
+    }
+
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+}
@@ -0,0 +1,160 @@
+package com.ellep.runningcompanion;
+
+import java.io.IOException;
+
+// A previous run indexed by cumulative elapsed time and moving distance, to
+// race against it. Both lookups keep a cursor into the index, so the usual
+// forward lookups of a live run cost amortized O(1); a lookup behind the
+// cursor falls back to a binary search.
+//
+// The moving distance is the one each point recorded live, so the ghost
+// pauses exactly where the run did. Tracks stored before that distance was
+// kept only have one averaged point per time group and no speed; for those
+// the auto-pause is redone on the displacement cluster alone, which can
+// pause on a slow stretch the live run counted.
+public class GhostRun {
+    private final int INITIAL_CAPACITY = 1024;
+
+    private final long startTime;
+
+    private long[] times = new long[INITIAL_CAPACITY];
+    private double[] distances = new double[INITIAL_CAPACITY];
+    private int count = 0;
+
+    private int timeCursor = 0;
+    private int distanceCursor = 0;
+
+    public GhostRun(long startTime, TrackInput input) throws IOException {
+        this.startTime = startTime;
+
+        AutoPauseDetector autoPauseDetector = new AutoPauseDetector();
+        TrackPoint lastPoint = null;
+        double distance = 0;
+
+        TrackPoint point;
+        while ((point = input.read()) != null) {
+            if (point.getTime() < startTime || (lastPoint != null && point.getTime() <= lastPoint.getTime())) {
+                continue;
+            }
+
+            if (point.hasDistance()) {
+                distance = Math.max(distance, point.getDistance());
+            } else {
+                // No speed was stored, see above
+                autoPauseDetector.addFix(point.getTime(), point.getLatitude(), point.getLongitude(), false, 0, 0);
+                if (lastPoint != null && !autoPauseDetector.isPaused()) {
+                    distance += Utils.distanceMeters(lastPoint.getLatitude(), lastPoint.getLongitude(), point.getLatitude(), point.getLongitude());
+                }
+            }
+            append(point.getTime() - startTime, distance);
+            lastPoint = point;
+        }
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    // Milliseconds from the start to the last point
+    public long getDuration() {
+        return count == 0 ? 0 : times[count - 1];
+    }
+
+    // Meters
+    public double getDistance() {
+        return count == 0 ? 0 : distances[count - 1];
+    }
+
+    // Distance the ghost had covered elapsedMs after its start, in meters
+    public double getDistanceAt(long elapsedMs) {
+        if (count == 0 || elapsedMs <= times[0]) {
+            return 0;
+        }
+        if (elapsedMs >= times[count - 1]) {
+            return distances[count - 1];
+        }
+
+        // Last point at or before elapsedMs
+        if (times[timeCursor] > elapsedMs) {
+            timeCursor = searchTime(elapsedMs);
+        }
+        while (times[timeCursor + 1] <= elapsedMs) {
+            timeCursor++;
+        }
+
+        int i = timeCursor;
+        double fraction = (double) (elapsedMs - times[i]) / (times[i + 1] - times[i]);
+        return distances[i] + fraction * (distances[i + 1] - distances[i]);
+    }
+
+    // Milliseconds the ghost took to cover the distance, or -1 when it never did
+    public long getTimeAt(double distance) {
+        if (count == 0 || distance > distances[count - 1]) {
+            return -1;
+        }
+        if (distance <= 0) {
+            return 0;
+        }
+
+        // First point at or past the distance
+        if (distanceCursor > 0 && distances[distanceCursor - 1] >= distance) {
+            distanceCursor = searchDistance(distance);
+        }
+        while (distances[distanceCursor] < distance) {
+            distanceCursor++;
+        }
+
+        int j = distanceCursor;
+        if (j == 0) {
+            return times[0];
+        }
+        double fraction = (distance - distances[j - 1]) / (distances[j] - distances[j - 1]);
+        return times[j - 1] + Math.round(fraction * (times[j] - times[j - 1]));
+    }
+
+    private int searchTime(long elapsedMs) {
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (times[middle] <= elapsedMs) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private int searchDistance(double distance) {
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (distances[middle] >= distance) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private void append(long time, double distance) {
+        if (count == times.length) {
+            long[] newTimes = new long[times.length * 2];
+            double[] newDistances = new double[distances.length * 2];
+            System.arraycopy(times, 0, newTimes, 0, count);
+            System.arraycopy(distances, 0, newDistances, 0, count);
+            times = newTimes;
+            distances = newDistances;
+        }
+        times[count] = time;
+        distances[count] = distance;
+        count++;
+    }
+}
@@ -0,0 +1,83 @@
+package com.ellep.runningcompanion;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Fixed grid over latitude and longitude, mapping each cell to the values
+// added in it. Cells are about 220 m tall and 220 m * cos(latitude) wide, so
+// below about 63 degrees anything within MAX_QUERY_RADIUS of a point is in
+// its cell or one of the 8 around it and a query looks at 9 cells, however
+// many values the index holds. Closer to the poles the cells get narrower
+// and queries look at as many more columns as the radius needs.
+public class GridIndex<T> {
+    public static final double CELL_DEGREES = 0.002;
+    public static final double MAX_QUERY_RADIUS = 100;
+
+    private static final double METERS_PER_DEGREE = 111195.0;
+    private static final double MAX_LATITUDE = 89.9;
+
+    private final Map<Long, Set<T>> cells = new HashMap<>();
+
+    public void add(double latitude, double longitude, T value) {
+        add(getCellKey(latitude, longitude), value);
+    }
+
+    public void add(long cellKey, T value) {
+        Set<T> values = cells.get(cellKey);
+        if (values == null) {
+            values = new LinkedHashSet<>();
+            cells.put(cellKey, values);
+        }
+        values.add(value);
+    }
+
+    // Adds every value found in the cell of the point and its neighbours
+    public void collectNear(double latitude, double longitude, Collection<T> result) {
+        long row = getRow(latitude);
+        long column = getColumn(longitude);
+        long columns = getColumnSpan(row);
+        for (long r = row - 1; r <= row + 1; r++) {
+            for (long c = column - columns; c <= column + columns; c++) {
+                Set<T> values = cells.get(getCellKey(r, c));
+                if (values != null) {
+                    result.addAll(values);
+                }
+            }
+        }
+    }
+
+    // Columns on each side to search so the narrowest of the three rows
+    // around the point still covers MAX_QUERY_RADIUS
+    private static long getColumnSpan(long row) {
+        double poleward = Math.max(Math.abs((row - 1) * CELL_DEGREES), Math.abs((row + 2) * CELL_DEGREES));
+        double cellWidth = CELL_DEGREES * METERS_PER_DEGREE * Math.cos(Math.toRadians(Math.min(poleward, MAX_LATITUDE)));
+        return Math.max(1, (long) Math.ceil(MAX_QUERY_RADIUS / cellWidth));
+    }
+
+    public Map<Long, Set<T>> getCells() {
+        return cells;
+    }
+
+    public boolean isEmpty() {
+        return cells.isEmpty();
+    }
+
+    public static long getCellKey(double latitude, double longitude) {
+        return getCellKey(getRow(latitude), getColumn(longitude));
+    }
+
+    private static long getCellKey(long row, long column) {
+        return (row << 32) ^ (column & 0xffffffffL);
+    }
+
+    private static long getRow(double latitude) {
+        return (long) Math.floor(latitude / CELL_DEGREES);
+    }
+
+    private static long getColumn(double longitude) {
+        return (long) Math.floor(longitude / CELL_DEGREES);
+    }
+}
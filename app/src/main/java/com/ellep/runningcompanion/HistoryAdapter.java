@@ -57,7 +57,11 @@ public class HistoryAdapter extends BaseAdapter {
         when.setText(Utils.formatDateTime(this.items.get(i).getWhen()));
 
         TextView altimetry = vi.findViewById(R.id.altimetry);
-        altimetry.setText(String.format("⇅ %.0f m", this.items.get(i).getAltimetry()));
+        if (this.items.get(i).isLegacyAltimetry()) {
+            altimetry.setText(String.format("↕ %.0f m", this.items.get(i).getAltimetry()));
+        } else {
+            altimetry.setText(String.format("↑ %.0f m ↓ %.0f m", this.items.get(i).getAltimetry(), this.items.get(i).getDescent()));
+        }
 
         return vi;
     }
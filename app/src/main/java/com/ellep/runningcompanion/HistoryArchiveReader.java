@@ -0,0 +1,96 @@
+package com.ellep.runningcompanion;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Reads a HistoryArchiveWriter file one run at a time. The track of the
+// current run is read point by point with readPoint, and whatever is left
+// of it is skipped by the next call to nextRun, so only one point is ever
+// held in memory.
+public class HistoryArchiveReader implements Closeable {
+    // A week of points at 5 Hz, anything past that is a corrupt count
+    public static final int MAX_POINT_COUNT = 7 * 24 * 3600 * 5;
+
+    private final DataInputStream input;
+    private final boolean hasDistance;
+
+    private String summary = null;
+    private int pointCount = 0;
+    private int remainingPoints = 0;
+
+    public HistoryArchiveReader(InputStream inputStream) throws IOException {
+        input = new DataInputStream(new BufferedInputStream(inputStream));
+        if (input.readInt() != HistoryArchiveWriter.MAGIC) {
+            throw new IOException("Not a history archive");
+        }
+
+        int version = input.readInt();
+        if (version > HistoryArchiveWriter.VERSION) {
+            throw new IOException("Unsupported history archive version " + version);
+        }
+        hasDistance = version >= 2;
+    }
+
+    // Returns false once every run was read
+    public boolean nextRun() throws IOException {
+        long unreadBytes = (long) remainingPoints * (hasDistance ? TrackWriter.POINT_SIZE : TrackWriter.LEGACY_POINT_SIZE);
+        while (unreadBytes > 0) {
+            int skipped = input.skipBytes((int) Math.min(unreadBytes, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                // Throws at the end of a truncated archive
+                input.readByte();
+                skipped = 1;
+            }
+            unreadBytes -= skipped;
+        }
+        remainingPoints = 0;
+
+        if (!input.readBoolean()) {
+            summary = null;
+            pointCount = 0;
+            return false;
+        }
+
+        summary = input.readUTF();
+        int count = input.readInt();
+        if (count < 0 || count > MAX_POINT_COUNT) {
+            summary = null;
+            throw new IOException("Invalid point count " + count);
+        }
+        pointCount = count;
+        remainingPoints = pointCount;
+        return true;
+    }
+
+    // Summary JSON of the current run
+    public String getSummary() {
+        return summary;
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    // Next point of the current run's track, null once it was fully read
+    public TrackPoint readPoint() throws IOException {
+        if (remainingPoints == 0) {
+            return null;
+        }
+
+        long time = input.readLong();
+        double latitude = input.readDouble();
+        double longitude = input.readDouble();
+        double altitude = input.readDouble();
+        double distance = hasDistance ? input.readDouble() : Double.NaN;
+        remainingPoints--;
+        return new TrackPoint(time, latitude, longitude, altitude, distance);
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
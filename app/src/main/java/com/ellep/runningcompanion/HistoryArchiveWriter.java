@@ -0,0 +1,64 @@
+package com.ellep.runningcompanion;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Backup of the whole history in a single file, written one run and one
+// point at a time. After a magic header and version, each run is a true
+// flag, its summary JSON, its point count and that many track points laid
+// out like TrackWriter records (time, latitude, longitude, altitude, moving
+// distance); a false flag ends the archive. Version 1 archives have no
+// moving distance.
+public class HistoryArchiveWriter implements Closeable {
+    public static final int MAGIC = 0x50524241;
+    public static final int VERSION = 2;
+
+    private final DataOutputStream output;
+    private int remainingPoints = 0;
+
+    public HistoryArchiveWriter(OutputStream outputStream) throws IOException {
+        output = new DataOutputStream(new BufferedOutputStream(outputStream));
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+    }
+
+    // Must be followed by exactly pointCount calls to writePoint
+    public void writeRun(String summary, int pointCount) throws IOException {
+        checkTrackComplete();
+        output.writeBoolean(true);
+        output.writeUTF(summary);
+        output.writeInt(pointCount);
+        remainingPoints = pointCount;
+    }
+
+    public void writePoint(TrackPoint point) throws IOException {
+        if (remainingPoints == 0) {
+            throw new IOException("More points than announced for the run");
+        }
+        output.writeLong(point.getTime());
+        output.writeDouble(point.getLatitude());
+        output.writeDouble(point.getLongitude());
+        output.writeDouble(point.getAltitude());
+        output.writeDouble(point.getDistance());
+        remainingPoints--;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            checkTrackComplete();
+            output.writeBoolean(false);
+        } finally {
+            output.close();
+        }
+    }
+
+    private void checkTrackComplete() throws IOException {
+        if (remainingPoints != 0) {
+            throw new IOException(remainingPoints + " points missing from the run");
+        }
+    }
+}
@@ -1,14 +1,24 @@
 package com.ellep.runningcompanion;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class HistoryItem {
     private long when;
     private long time;
     private double distance;
     private double pace;
     private double altimetry;
+    private double descent;
+    private boolean legacyAltimetry;
+    private double splitDistance;
+    private List<Double> splits = new ArrayList<>();
+    private List<Long> splitTimes = new ArrayList<>();
+    private JSONObject bests = new JSONObject();
 
     public HistoryItem(long when, long time, double distance, double pace, double altimetry) {
         this.when = when;
@@ -16,6 +26,7 @@ public class HistoryItem {
         this.distance = distance;
         this.pace = pace;
         this.altimetry = altimetry;
+        this.splitDistance = 1000;
     }
 
     public HistoryItem(JSONObject obj) {
@@ -25,6 +36,28 @@ public class HistoryItem {
             this.distance = obj.getDouble("distance");
             this.pace = obj.getDouble("pace");
             this.altimetry = obj.getDouble("altimetry");
+            this.descent = obj.optDouble("descent", 0);
+            this.legacyAltimetry = !obj.has("descent");
+            this.splitDistance = obj.optDouble("splitDistance", 1000);
+
+            JSONArray splitsArray = obj.optJSONArray("splits");
+            if (splitsArray != null) {
+                for (int i = 0; i < splitsArray.length(); i++) {
+                    this.splits.add(splitsArray.getDouble(i));
+                }
+            }
+
+            JSONArray splitTimesArray = obj.optJSONArray("splitTimes");
+            if (splitTimesArray != null) {
+                for (int i = 0; i < splitTimesArray.length(); i++) {
+                    this.splitTimes.add(splitTimesArray.getLong(i));
+                }
+            }
+
+            JSONObject bestsObj = obj.optJSONObject("bests");
+            if (bestsObj != null) {
+                this.bests = bestsObj;
+            }
         } catch (JSONException error) {
             System.out.println(error);
             this.when = 0;
@@ -32,6 +65,11 @@ public class HistoryItem {
             this.distance = 0;
             this.pace = 0;
             this.altimetry = 0;
+            this.descent = 0;
+            this.legacyAltimetry = false;
+            this.splitDistance = 1000;
+            this.splits.clear();
+            this.splitTimes.clear();
         }
     }
 
@@ -51,7 +89,38 @@ public class HistoryItem {
         return when;
     }
 
+    // Ascent of the run, in meters, or the climb and drop added together for
+    // legacy runs
     public double getAltimetry() {
         return altimetry;
     }
+
+    // Runs stored before the descent was kept, whose altimetry is the sum of
+    // every altitude change instead of the ascent
+    public boolean isLegacyAltimetry() {
+        return legacyAltimetry;
+    }
+
+    public double getDescent() {
+        return descent;
+    }
+
+    public double getSplitDistance() {
+        return splitDistance;
+    }
+
+    // Moving time of each split, in seconds
+    public List<Double> getSplits() {
+        return splits;
+    }
+
+    // Wall time when each split ended, empty for runs stored before they were kept
+    public List<Long> getSplitTimes() {
+        return splitTimes;
+    }
+
+    // Fastest time over the distance within this run in seconds, NaN if unknown
+    public double getBestEffort(double distance) {
+        return bests.optDouble(PersonalRecords.getKey(distance), Double.NaN);
+    }
 }
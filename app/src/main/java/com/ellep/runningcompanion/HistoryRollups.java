@@ -0,0 +1,133 @@
+package com.ellep.runningcompanion;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TimeZone;
+
+// Weekly, monthly and yearly totals of the history, updated one run at a time
+// so the stats never need to go through every run
+public class HistoryRollups {
+    public static final String WEEK = "week";
+    public static final String MONTH = "month";
+    public static final String YEAR = "year";
+
+    private static final String[] PERIODS = {WEEK, MONTH, YEAR};
+    // Rollups stored before version 2 added the legacy altimetry to the ascent
+    private static final int VERSION = 2;
+
+    private JSONObject rollups;
+
+    public HistoryRollups(String json) {
+        try {
+            rollups = new JSONObject(json);
+        } catch (JSONException error) {
+            System.out.println(error);
+            rollups = new JSONObject();
+        }
+    }
+
+    public static HistoryRollups fromHistory(List<HistoryItem> items) {
+        HistoryRollups rollups = new HistoryRollups("{}");
+        try {
+            rollups.rollups.put("version", VERSION);
+        } catch (JSONException error) {
+            System.out.println(error);
+        }
+        for (HistoryItem item : items) {
+            rollups.add(item);
+        }
+        return rollups;
+    }
+
+    // Older rollups have to be built again from the history
+    public boolean isCurrent() {
+        return rollups.optInt("version", 1) == VERSION;
+    }
+
+    public void add(HistoryItem item) {
+        for (String period : PERIODS) {
+            try {
+                JSONObject buckets = rollups.optJSONObject(period);
+                if (buckets == null) {
+                    buckets = new JSONObject();
+                    rollups.put(period, buckets);
+                }
+
+                String key = getKey(period, item.getWhen());
+                JSONObject bucket = buckets.optJSONObject(key);
+                if (bucket == null) {
+                    bucket = new JSONObject();
+                    buckets.put(key, bucket);
+                }
+
+                bucket.put("count", bucket.optInt("count", 0) + 1);
+                bucket.put("distance", bucket.optDouble("distance", 0) + item.getDistance());
+                bucket.put("time", bucket.optLong("time", 0) + item.getTime());
+                // Legacy runs have no ascent of their own, only the total change
+                if (!item.isLegacyAltimetry()) {
+                    bucket.put("ascent", bucket.optDouble("ascent", 0) + item.getAltimetry());
+                }
+            } catch (JSONException error) {
+                System.out.println(error);
+            }
+        }
+    }
+
+    public RollupBucket getBucket(String period, long when) {
+        return getBucket(period, getKey(period, when));
+    }
+
+    public RollupBucket getBucket(String period, String key) {
+        JSONObject buckets = rollups.optJSONObject(period);
+        JSONObject bucket = buckets != null ? buckets.optJSONObject(key) : null;
+        if (bucket == null) {
+            return new RollupBucket(key, 0, 0, 0, 0);
+        }
+
+        return new RollupBucket(
+                key,
+                bucket.optInt("count", 0),
+                bucket.optDouble("distance", 0),
+                bucket.optLong("time", 0),
+                bucket.optDouble("ascent", 0)
+        );
+    }
+
+    // Bucket keys of the period in chronological order, for trends
+    public List<String> getKeys(String period) {
+        List<String> keys = new ArrayList<>();
+        JSONObject buckets = rollups.optJSONObject(period);
+        if (buckets != null) {
+            Iterator<String> iterator = buckets.keys();
+            while (iterator.hasNext()) {
+                keys.add(iterator.next());
+            }
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+    public String toJSON() {
+        return rollups.toString();
+    }
+
+    static String getKey(String period, long when) {
+        LocalDate date = Instant.ofEpochMilli(when).atZone(TimeZone.getDefault().toZoneId()).toLocalDate();
+        switch (period) {
+            case WEEK:
+                return String.format("%d-W%02d", date.get(IsoFields.WEEK_BASED_YEAR), date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+            case MONTH:
+                return String.format("%d-%02d", date.getYear(), date.getMonthValue());
+            default:
+                return String.valueOf(date.getYear());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.ellep.runningcompanion;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+// The history, personal records, rollups and segments kept as JSON in the
+// preferences. Every change reads, updates and rewrites a whole value, so
+// anything that reads or changes them runs through execute, on a single
+// thread, and two changes can never overwrite each other. The methods
+// below must only be called from those tasks.
+public class HistoryStore {
+    private static final String EMPTY_HISTORY = "{\"history\": []}";
+    private static final String EMPTY_SEGMENTS = "{\"segments\": []}";
+
+    private final PreferenceStore preferences;
+    private final Executor executor;
+
+    // The executor must run one task at a time, in order
+    public HistoryStore(PreferenceStore preferences, Executor executor) {
+        this.preferences = preferences;
+        this.executor = executor;
+    }
+
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    public JSONArray getHistory() throws JSONException {
+        return new JSONObject(preferences.getString("history", EMPTY_HISTORY)).getJSONArray("history");
+    }
+
+    // Start times of the runs in the history
+    public Set<Long> getKnownRuns() throws JSONException {
+        JSONArray history = getHistory();
+        Set<Long> knownRuns = new HashSet<>();
+        for (int i = 0; i < history.length(); i++) {
+            knownRuns.add(history.getJSONObject(i).getLong("when"));
+        }
+        return knownRuns;
+    }
+
+    // Appends the runs to the history and adds them to the records and to
+    // the rollups, once those were built
+    public void addRuns(List<JSONObject> runs) throws JSONException {
+        JSONArray history = getHistory();
+        PersonalRecords records = getRecords();
+        HistoryRollups rollups = hasRollups() ? getRollups() : null;
+
+        for (JSONObject run : runs) {
+            HistoryItem item = new HistoryItem(run);
+            records.update(item.getWhen(), getBestEfforts(item));
+            if (rollups != null) {
+                rollups.add(item);
+            }
+            history.put(run);
+        }
+
+        JSONObject historyObj = new JSONObject();
+        historyObj.put("history", history);
+        preferences.putString("history", historyObj.toString());
+        preferences.putString("records", records.toJSON());
+        if (rollups != null) {
+            preferences.putString("rollups", rollups.toJSON());
+        }
+    }
+
+    // Newest first. Rollups are kept up to date by addRuns, they only need
+    // to be built from the whole history once.
+    public List<HistoryItem> readHistory() {
+        List<HistoryItem> items = new ArrayList<>();
+
+        try {
+            JSONArray history = getHistory();
+            for (int i = 0; i < history.length(); i++) {
+                items.add(new HistoryItem(history.getJSONObject(i)));
+            }
+
+            items.sort((historyItem, t1) -> Long.compare(t1.getWhen(), historyItem.getWhen()));
+
+            if (!hasRollups()) {
+                preferences.putString("rollups", HistoryRollups.fromHistory(items).toJSON());
+            }
+        } catch (JSONException error) {
+            System.out.println(error);
+        }
+
+        return items;
+    }
+
+    public PersonalRecords getRecords() {
+        return new PersonalRecords(preferences.getString("records", "{}"));
+    }
+
+    public HistoryRollups getRollups() {
+        return new HistoryRollups(preferences.getString("rollups", "{}"));
+    }
+
+    private boolean hasRollups() {
+        return preferences.contains("rollups") && getRollups().isCurrent();
+    }
+
+    public SegmentStore getSegments() {
+        return new SegmentStore(preferences.getString("segments", EMPTY_SEGMENTS));
+    }
+
+    public void putSegments(SegmentStore segments) {
+        preferences.putString("segments", segments.toJSON());
+    }
+
+    private static List<BestEffort> getBestEfforts(HistoryItem item) {
+        List<BestEffort> bestEfforts = new ArrayList<>();
+        for (double distance : BestEffortFinder.STANDARD_DISTANCES) {
+            double duration = item.getBestEffort(distance);
+            if (!Double.isNaN(duration)) {
+                bestEfforts.add(new BestEffort(distance, duration, item.getWhen()));
+            }
+        }
+        return bestEfforts;
+    }
+}
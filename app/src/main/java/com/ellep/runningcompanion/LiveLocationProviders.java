@@ -0,0 +1,9 @@
+package com.ellep.runningcompanion;
+
+// The live location providers a replay stands in for
+public interface LiveLocationProviders {
+    void stop();
+
+    // Called from the replay thread
+    void restart();
+}
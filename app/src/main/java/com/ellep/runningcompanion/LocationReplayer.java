@@ -0,0 +1,83 @@
+package com.ellep.runningcompanion;
+
+import java.io.IOException;
+
+// Plays a fix log back in its recorded order. With a speed of 1 the fixes
+// are spaced as they were recorded, with 100 a hundred times faster and with
+// AS_FAST_AS_POSSIBLE (or any speed <= 0) without waiting at all. The replay
+// clock, when given, is moved to each fix time before it is delivered.
+public class LocationReplayer {
+    public static final double AS_FAST_AS_POSSIBLE = 0;
+
+    private static final ReplayTimer SYSTEM_TIMER = new ReplayTimer() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleep(long nanos) throws InterruptedException {
+            Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+        }
+    };
+
+    private final double speed;
+    private final ReplayClock clock;
+    private final ReplayTimer timer;
+
+    private volatile boolean cancelled = false;
+
+    private int replayedFixes = 0;
+    private long elapsedNanos = 0;
+
+    public LocationReplayer(double speed, ReplayClock clock) {
+        this(speed, clock, SYSTEM_TIMER);
+    }
+
+    public LocationReplayer(double speed, ReplayClock clock, ReplayTimer timer) {
+        this.speed = speed;
+        this.clock = clock;
+        this.timer = timer;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public int replay(FixLogReader reader, RunnerReportCallback callback) throws IOException, InterruptedException {
+        long startNanos = timer.nanoTime();
+        long firstFixTime = -1;
+
+        RunnerLocationReport report;
+        while (!cancelled && (report = reader.read()) != null) {
+            if (firstFixTime < 0) {
+                firstFixTime = report.getTime();
+            }
+
+            if (speed > 0) {
+                long dueNanos = startNanos + (long) ((report.getTime() - firstFixTime) * 1000000L / speed);
+                long waitNanos = dueNanos - timer.nanoTime();
+                if (waitNanos > 0) {
+                    timer.sleep(waitNanos);
+                }
+            }
+
+            if (clock != null) {
+                clock.setTime(report.getTime());
+            }
+            callback.onReport(report);
+            replayedFixes++;
+        }
+
+        elapsedNanos = timer.nanoTime() - startNanos;
+        return replayedFixes;
+    }
+
+    public int getReplayedFixes() {
+        return replayedFixes;
+    }
+
+    public double getFixesPerSecond() {
+        return elapsedNanos > 0 ? replayedFixes / (elapsedNanos / 1e9) : 0;
+    }
+}
@@ -0,0 +1,42 @@
+package com.ellep.runningcompanion;
+
+import android.location.Location;
+
+public class LocationReportConverter {
+    public static RunnerLocationReport toReport(String source, long time, Location location) {
+        return new RunnerLocationReport(
+                source,
+                time,
+                location.getLatitude(),
+                location.getLongitude(),
+                location.hasAltitude() ? location.getAltitude() : Double.NaN,
+                location.hasAccuracy() ? location.getAccuracy() : Float.NaN,
+                location.hasVerticalAccuracy() ? location.getVerticalAccuracyMeters() : Float.NaN,
+                location.hasSpeed() ? location.getSpeed() : Float.NaN,
+                location.hasSpeedAccuracy() ? location.getSpeedAccuracyMetersPerSecond() : Float.NaN
+        );
+    }
+
+    public static Location toLocation(RunnerLocationReport report) {
+        Location location = new Location(report.getSource());
+        location.setTime(report.getTime());
+        location.setLatitude(report.getLatitude());
+        location.setLongitude(report.getLongitude());
+        if (report.hasAltitude()) {
+            location.setAltitude(report.getAltitude());
+        }
+        if (report.hasAccuracy()) {
+            location.setAccuracy(report.getAccuracy());
+        }
+        if (report.hasVerticalAccuracy()) {
+            location.setVerticalAccuracyMeters(report.getVerticalAccuracy());
+        }
+        if (report.hasSpeed()) {
+            location.setSpeed(report.getSpeed());
+        }
+        if (report.hasSpeedAccuracy()) {
+            location.setSpeedAccuracyMetersPerSecond(report.getSpeedAccuracy());
+        }
+        return location;
+    }
+}
@@ -7,7 +7,10 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.location.Location;
 import android.location.LocationManager;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
@@ -23,6 +26,8 @@ import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.location.Priority;
 
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.util.Arrays;
 
 public class LocationService extends Service {
@@ -39,6 +44,27 @@ public class LocationService extends Service {
             LocationManager.FUSED_PROVIDER
     ));
 
+    private final PressureSensorManager pressureSensorManager = new PressureSensorManager();
+    private final StepSensorManager stepSensorManager = new StepSensorManager();
+
+    // Plays recorded fix logs back instead of the live providers
+    private final ReplaySession replaySession = new ReplaySession(new LiveLocationProviders() {
+        @Override
+        public void stop() {
+            fusedLocationClient.removeLocationUpdates(locationCallback);
+            otherLocationProviderManager.unregisterLocationListeners(LocationService.this);
+        }
+
+        @Override
+        public void restart() {
+            // The providers deliver on the thread that registered them
+            mainHandler.post(() -> registerLocationProviders());
+        }
+    });
+
+    private Handler mainHandler;
+    private boolean destroyed = false;
+
     public LocationService() {
 
     }
@@ -61,9 +87,12 @@ public class LocationService extends Service {
 
         // Create a new FusedLocationProviderClient
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
+        mainHandler = new Handler(Looper.getMainLooper());
 
         // Handle new locations
         otherLocationProviderManager.registerLocationListeners(this, this::sendLocationBroadcast);
+        pressureSensorManager.registerSensorListener(this, this::sendPressureBroadcast);
+        stepSensorManager.registerSensorListener(this, this::sendStepBroadcast);
         locationCallback = new LocationCallback() {
             @Override
             public void onLocationResult(LocationResult locationResult) {
@@ -83,10 +112,26 @@ public class LocationService extends Service {
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        boolean hasFineLocation = ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED;
-        boolean hasCoarseLocation = ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_COARSE_LOCATION) != PackageManager.PERMISSION_GRANTED;
+        // Replays can be started with:
+        // adb shell am start-foreground-service -n com.ellep.runningcompanion/.LocationService --es replay_file <path> --ed replay_speed 100
+        String replayFile = intent != null ? intent.getStringExtra("replay_file") : null;
+        if (replayFile != null) {
+            startReplay(replayFile, intent.getDoubleExtra("replay_speed", 1));
+            return START_NOT_STICKY;
+        }
 
-        if (!hasFineLocation && !hasCoarseLocation) {
+        // Activity recognition was granted after the service started
+        if (intent != null && intent.getBooleanExtra("refresh_step_sensor", false)) {
+            stepSensorManager.unregisterSensorListener(this);
+            stepSensorManager.registerSensorListener(this, this::sendStepBroadcast);
+            return START_STICKY;
+        }
+
+        if (replaySession.isReplaying()) {
+            return START_NOT_STICKY;
+        }
+
+        if (!hasLocationPermission()) {
             return START_NOT_STICKY;
         }
 
@@ -94,6 +139,22 @@ public class LocationService extends Service {
         return START_STICKY;
     }
 
+    private boolean hasLocationPermission() {
+        boolean hasFineLocation = ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED;
+        boolean hasCoarseLocation = ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_COARSE_LOCATION) != PackageManager.PERMISSION_GRANTED;
+        return hasFineLocation || hasCoarseLocation;
+    }
+
+    // Back to the live providers after a replay, unless the service is gone
+    private void registerLocationProviders() {
+        if (destroyed || replaySession.isReplaying() || !hasLocationPermission()) {
+            return;
+        }
+
+        otherLocationProviderManager.registerLocationListeners(this, this::sendLocationBroadcast);
+        fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, null);
+    }
+
     private void sendLocationBroadcast(Location location, String source) {
         Intent intent = new Intent("location_update");
         intent.putExtra("location", location);
@@ -101,6 +162,51 @@ public class LocationService extends Service {
         sendBroadcast(intent);
     }
 
+    private void startReplay(String path, double speed) {
+        LocationReplayer replayer = new LocationReplayer(speed, null);
+        if (!replaySession.begin(replayer)) {
+            return;
+        }
+
+        new Thread(() -> {
+            // Recorded times are shifted so the replay starts now
+            long[] timeOffset = {Long.MIN_VALUE};
+            try {
+                replaySession.play(() -> new FixLogReader(new FileInputStream(path)), report -> {
+                    if (timeOffset[0] == Long.MIN_VALUE) {
+                        timeOffset[0] = SystemClock.elapsedRealtime() - report.getTime();
+                    }
+                    sendReplayBroadcast(report, report.getTime() + timeOffset[0]);
+                });
+                Log.d("LocationService", String.format("Replayed %d fixes (%.0f fixes/s)", replayer.getReplayedFixes(), replayer.getFixesPerSecond()));
+            } catch (IOException | InterruptedException error) {
+                Log.d("LocationService", "Replay failed: " + error.getMessage());
+            }
+        }, "location-replay").start();
+    }
+
+    private void sendReplayBroadcast(RunnerLocationReport report, long time) {
+        Intent intent = new Intent("location_update");
+        intent.putExtra("location", LocationReportConverter.toLocation(report));
+        intent.putExtra("source", report.getSource());
+        intent.putExtra("time", time);
+        intent.putExtra("replay", true);
+        sendBroadcast(intent);
+    }
+
+    private void sendPressureBroadcast(long time, float pressure) {
+        Intent intent = new Intent("pressure_update");
+        intent.putExtra("time", time);
+        intent.putExtra("pressure", pressure);
+        sendBroadcast(intent);
+    }
+
+    private void sendStepBroadcast(long time) {
+        Intent intent = new Intent("step_update");
+        intent.putExtra("time", time);
+        sendBroadcast(intent);
+    }
+
     private void createNotification() {
         Log.d("LocationService", "Creating notification");
         NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
@@ -131,8 +237,12 @@ public class LocationService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        destroyed = true;
+        replaySession.close();
         fusedLocationClient.removeLocationUpdates(locationCallback);
         otherLocationProviderManager.unregisterLocationListeners(this);
+        pressureSensorManager.unregisterSensorListener(this);
+        stepSensorManager.unregisterSensorListener(this);
         stopForeground(true);
         stopSelf();
     }
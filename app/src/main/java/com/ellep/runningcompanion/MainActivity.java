@@ -8,14 +8,22 @@ import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.location.Location;
+import android.net.Uri;
 import android.os.Bundle;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 
 import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.speech.tts.TextToSpeech;
 import android.util.Log;
+import android.view.View;
+import android.widget.EditText;
 import android.widget.SeekBar;
+import android.widget.Toast;
 
 import com.ellep.runningcompanion.databinding.ActivityMainBinding;
 
@@ -23,65 +31,161 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity {
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1;
 
     private final int UI_UPDATE_TIME_MS = 1000;
     private final double GPS_MIN_ACCURACY = 5.0;
+    private final double CURRENT_SPEED_SMOOTHING = 0.3;
 
     private ActivityMainBinding binding;
 
-    private long startTime = -1;
+    // Written on the UI thread, also read by the ingest thread
+    private volatile long startTime = -1;
 
     private Handler handler;
     private Runnable updateRunnable;
 
-    private TextToSpeech textToSpeech;
+    // Created when the first run starts
+    private volatile TextToSpeech textToSpeech = null;
     private int ttsTime = 60;
-    private boolean ttsEnabled = true;
+    private final ExecutorService ttsExecutor = Executors.newSingleThreadExecutor();
+    private final RunAnnouncer runAnnouncer = new RunAnnouncer(this::speak);
+
+    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
+    private HistoryStore historyStore;
+    // Loaded on the first segment created and then kept up to date, only
+    // used from the history store's tasks
+    private TrackCellIndex trackCells = null;
+
+    private final ActivityResultLauncher<String> backupLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument("application/octet-stream"), this::backupHistory);
+    private final ActivityResultLauncher<String[]> restoreLauncher = registerForActivityResult(
+            new ActivityResultContracts.OpenDocument(), this::restoreHistory);
 
     private boolean servicesRegistered = false;
+    private boolean activityRecognitionRequested = false;
+
+    private long createTime;
 
-    private final RunnerLocationManager runnerManager = new RunnerLocationManager();
+    // Reports, run control and the snapshot publication all go through the
+    // ingest thread, the UI thread only reads the published snapshot
+    private final RunnerClock liveClock = new ElapsedRealtimeClock();
+    private final RunnerLocationManager runnerManager = new RunnerLocationManager(liveClock);
+    private HandlerThread ingestThread;
+    private Handler ingestHandler;
+
+    private final ReplayClock replayClock = new ReplayClock();
+    private FixLogWriter fixLogWriter = null;
+    private StepLogWriter stepLogWriter = null;
 
     private BroadcastReceiver locationReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
             Location location = intent.getParcelableExtra("location");
             String source = intent.getStringExtra("source");
-            long currentTime = Calendar.getInstance().getTimeInMillis();
+
+            // Stamped with when the fix was taken, not when the broadcast
+            // arrived, so delivery delays don't move it to another time group
+            long fixTime = location.getElapsedRealtimeNanos() > 0
+                    ? location.getElapsedRealtimeNanos() / 1000000
+                    : runnerManager.getCurrentTime();
+
+            // Replayed fixes carry their own time and drive the clock
+            if (intent.getBooleanExtra("replay", false)) {
+                fixTime = intent.getLongExtra("time", fixTime);
+                replayClock.setTime(fixTime);
+                if (runnerManager.getClock() != replayClock) {
+                    replayClock.setWallOffset(liveClock.getWallOffset());
+                    runnerManager.setClock(replayClock);
+                }
+            } else if (runnerManager.getClock() != liveClock) {
+                // A live fix after a replay
+                runnerManager.setClock(liveClock);
+            }
+
+            RunnerLocationReport report = LocationReportConverter.toReport(source, fixTime, location);
+            recordFix(report);
 
             if (location.hasAccuracy() && location.getAccuracy() <= GPS_MIN_ACCURACY) {
-                runnerManager.addLocationReport(new RunnerLocationReport(source, currentTime, location));
+                runnerManager.addLocationReport(report);
             }
         }
     };
 
+    private BroadcastReceiver pressureReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            float pressure = intent.getFloatExtra("pressure", 0);
+            runnerManager.addPressureReport(pressure);
+        }
+    };
+
+    private BroadcastReceiver stepReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            long time = intent.getLongExtra("time", 0);
+            runnerManager.addStepReport(time);
+            recordStep(time);
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        createTime = SystemClock.elapsedRealtime();
 
         // Inflates the layout
         binding = ActivityMainBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
 
-        // Initialize the UI
+        // Announces the run progress
+        runnerManager.addSnapshotCallback(runAnnouncer);
+
+        ingestThread = new HandlerThread("runner-ingest");
+        ingestThread.start();
+        ingestHandler = new Handler(ingestThread.getLooper());
+
+        // The history and everything stored with it is only read and changed
+        // on the background executor
+        historyStore = new HistoryStore(new SharedPreferenceStore(getPreferences(Context.MODE_PRIVATE)), backgroundExecutor);
+
+        // Only the run controls are needed for the first frame
         initializeButtonsUI();
-        initializeTTSUI();
-        initializeConfigUI();
-        updateHistory();
+        logStartupPhase("controls");
 
-        // Asks the user for permissions
+        // Asks the user for permissions, the GPS starts warming up in onResume
         checkPermissions();
 
-        // Initializes Text to Speech
-        textToSpeech = new TextToSpeech(getApplicationContext(), status -> {});
-        textToSpeech.setLanguage(Locale.US);
+        // Everything else waits for the first frame
+        getWindow().getDecorView().post(() -> {
+            logStartupPhase("first frame");
+
+            initializeTTSUI();
+            initializeConfigUI();
+            initializeHistoryUI();
+            logStartupPhase("deferred UI");
+
+            loadHistory();
+        });
     }
 
     @Override
@@ -95,6 +199,7 @@ public class MainActivity extends AppCompatActivity {
 
         if(checkPermissions()) {
             setupServices();
+            logStartupPhase("location service");
         }
     }
 
@@ -111,53 +216,80 @@ public class MainActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
         destroyServices();
+        ingestHandler.post(this::closeSensorLogs);
+        ingestThread.quitSafely();
+        if (textToSpeech != null) {
+            textToSpeech.shutdown();
+        }
+        ttsExecutor.shutdown();
+        backgroundExecutor.shutdown();
     }
 
+    // Location is required and asked for until granted. Activity recognition
+    // only feeds the step detector, so it is asked for once per activity and
+    // the accelerometer is used when it is denied.
     private boolean checkPermissions() {
         boolean needsFineLocation = ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED;
         boolean needsCoarseLocation = ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_COARSE_LOCATION) != PackageManager.PERMISSION_GRANTED;
+        boolean needsActivityRecognition = ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACTIVITY_RECOGNITION) != PackageManager.PERMISSION_GRANTED;
 
+        List<String> permissions = new ArrayList<>();
         if (needsFineLocation || needsCoarseLocation) {
+            permissions.add(android.Manifest.permission.ACCESS_FINE_LOCATION);
+            permissions.add(android.Manifest.permission.ACCESS_COARSE_LOCATION);
+        }
+        if (needsActivityRecognition && !activityRecognitionRequested) {
+            permissions.add(android.Manifest.permission.ACTIVITY_RECOGNITION);
+            activityRecognitionRequested = true;
+        }
+
+        if (!permissions.isEmpty()) {
             // If the permission is not granted, request it from the user
             ActivityCompat.requestPermissions(
                     this,
-                    new String[]{
-                            android.Manifest.permission.ACCESS_FINE_LOCATION,
-                            android.Manifest.permission.ACCESS_COARSE_LOCATION
-                    },
+                    permissions.toArray(new String[0]),
                     LOCATION_PERMISSION_REQUEST_CODE
             );
-
-            return false;
         }
 
-        return true;
+        return !needsFineLocation && !needsCoarseLocation;
     }
 
     private void setupServices() {
+        // The permission result and onResume may both get here
+        if (servicesRegistered)
+            return;
+
         // Initialize the main loop
         handler = new Handler();
         updateRunnable = new Runnable() {
             @Override
             public void run() {
-                updateUI();
-                speakUpdates();
+                ingestHandler.post(() -> {
+                    runnerManager.publishSnapshot();
+                    runOnUiThread(MainActivity.this::updateUI);
+                });
                 handler.postDelayed(this, UI_UPDATE_TIME_MS);
             }
         };
         handler.post(updateRunnable);
 
-        // Starts location service
-        Intent intent = new Intent(this, LocationService.class);
-        startForegroundService(intent);
+        startLocationService();
 
-        // Register location service
+        // Register location service, delivered on the ingest thread
         IntentFilter filter = new IntentFilter("location_update");
-        registerReceiver(locationReceiver, filter);
+        registerReceiver(locationReceiver, filter, null, ingestHandler);
+        registerReceiver(pressureReceiver, new IntentFilter("pressure_update"), null, ingestHandler);
+        registerReceiver(stepReceiver, new IntentFilter("step_update"), null, ingestHandler);
 
         servicesRegistered = true;
     }
 
+    private void startLocationService() {
+        Intent intent = new Intent(this, LocationService.class);
+        startForegroundService(intent);
+    }
+
     private void destroyServices() {
         if (!servicesRegistered)
             return;
@@ -167,9 +299,13 @@ public class MainActivity extends AppCompatActivity {
 
         try {
             unregisterReceiver(locationReceiver);
+            unregisterReceiver(pressureReceiver);
+            unregisterReceiver(stepReceiver);
         } catch(RuntimeException error) {
             Log.d("MainActivity", error.getMessage());
         }
+
+        servicesRegistered = false;
     }
 
     private void initializeButtonsUI() {
@@ -191,8 +327,12 @@ public class MainActivity extends AppCompatActivity {
 
     private void initializeConfigUI() {
         // Handles seek bar
-        runnerManager.setCurrentSpeedTimeBuffer((binding.currentSpeedBuffer.getProgress() + 2) * 5);
-        binding.currentSpeedBufferView.setText(String.format("%d s", runnerManager.getCurrentSpeedTimeBuffer()));
+        int currentSpeedBuffer = (binding.currentSpeedBuffer.getProgress() + 2) * 5;
+        ingestHandler.post(() -> {
+            runnerManager.setCurrentSpeedSmoothing(CURRENT_SPEED_SMOOTHING);
+            runnerManager.setCurrentSpeedTimeBuffer(currentSpeedBuffer);
+        });
+        binding.currentSpeedBufferView.setText(String.format("%d s", currentSpeedBuffer));
         binding.currentSpeedBuffer.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {}
@@ -202,16 +342,325 @@ public class MainActivity extends AppCompatActivity {
 
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-                runnerManager.setCurrentSpeedTimeBuffer((progress + 2) * 5);
-                binding.currentSpeedBufferView.setText(String.format("%d s", runnerManager.getCurrentSpeedTimeBuffer()));
+                int currentSpeedBuffer = (progress + 2) * 5;
+                ingestHandler.post(() -> runnerManager.setCurrentSpeedTimeBuffer(currentSpeedBuffer));
+                binding.currentSpeedBufferView.setText(String.format("%d s", currentSpeedBuffer));
             }
         });
 
-        runnerManager.setUseWeightSquared(binding.squaredWeightEnabled.isChecked());
-        binding.squaredWeightEnabled.setChecked(runnerManager.isUseWeightSquared());
+        boolean useWeightSquared = binding.squaredWeightEnabled.isChecked();
+        ingestHandler.post(() -> runnerManager.setUseWeightSquared(useWeightSquared));
         binding.squaredWeightEnabled.setOnCheckedChangeListener((compoundButton, isChecked) -> {
-            runnerManager.setUseWeightSquared(isChecked);
-            updateUI();
+            ingestHandler.post(() -> runnerManager.setUseWeightSquared(isChecked));
+        });
+    }
+
+    private void initializeHistoryUI() {
+        binding.backup.setOnClickListener(v -> backupLauncher.launch("corridas.prb"));
+        binding.restore.setOnClickListener(v -> restoreLauncher.launch(new String[]{"*/*"}));
+
+        binding.historyList.setOnItemClickListener((parent, view, position, id) -> {
+            HistoryItem item = (HistoryItem) parent.getItemAtPosition(position);
+            if (!TrackStore.hasTrack(this, item.getWhen())) {
+                Toast.makeText(this, "Percurso não gravado para esta corrida", Toast.LENGTH_SHORT).show();
+                return;
+            }
+
+            String[] options = {"Exportar (GPX e TCX)", "Correr contra (fantasma)", "Criar segmento"};
+            AlertDialog.Builder builder = new AlertDialog.Builder(this);
+            builder.setTitle("Corrida de " + Utils.formatDateTime(item.getWhen()));
+            builder.setItems(options, (dialog, which) -> {
+                if (which == 0) {
+                    exportRun(item);
+                } else if (which == 1) {
+                    loadGhost(item);
+                } else {
+                    promptSegmentName(item);
+                }
+            });
+            builder.setNegativeButton("Cancelar", (dialog, which) -> dialog.cancel());
+            builder.create().show();
+        });
+    }
+
+    private void promptSegmentName(HistoryItem item) {
+        EditText input = new EditText(this);
+        input.setHint("Nome do segmento");
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setMessage("O percurso inteiro desta corrida vira um segmento");
+        builder.setView(input);
+        builder.setPositiveButton("Criar", (dialog, which) -> {
+            String name = input.getText().toString().trim();
+            createSegment(item, name.isEmpty() ? "Segmento" : name);
+        });
+        builder.setNegativeButton("Cancelar", (dialog, which) -> dialog.cancel());
+        builder.create().show();
+    }
+
+    private void createSegment(HistoryItem item, String name) {
+        historyStore.execute(() -> {
+            String message;
+            try {
+                Segment segment = Segment.fromTrack(runnerManager.toWallTime(runnerManager.getCurrentTime()), name, TrackStore.readTrack(this, item.getWhen()));
+                SegmentStore segments = historyStore.getSegments();
+                segments.add(segment);
+
+                // Only the runs that went near every checkpoint are read and verified
+                TrackCellIndex cells = getTrackCells();
+                SegmentMatcher matcher = new SegmentMatcher(Collections.singletonList(segment));
+                int matchedRuns = 0;
+                for (long when : cells.findRuns(segment)) {
+                    List<SegmentEffort> efforts = matcher.match(TrackStore.readTrack(this, when));
+                    for (SegmentEffort effort : efforts) {
+                        segments.addEffort(when, effort);
+                    }
+                    if (!efforts.isEmpty()) {
+                        matchedRuns++;
+                    }
+                }
+
+                historyStore.putSegments(segments);
+
+                message = String.format("Segmento %s criado (%.2f km, %d corridas)", name, segment.getLength() / 1000, matchedRuns);
+            } catch (IOException | JSONException error) {
+                Log.d("MainActivity", error.getMessage());
+                message = "Falha ao criar o segmento";
+            }
+
+            String toastMessage = message;
+            runOnUiThread(() -> Toast.makeText(this, toastMessage, Toast.LENGTH_LONG).show());
+            loadHistory();
+        });
+    }
+
+    private void backupHistory(Uri uri) {
+        if (uri == null) {
+            return;
+        }
+
+        historyStore.execute(() -> {
+            String message;
+            try (OutputStream output = getContentResolver().openOutputStream(uri)) {
+                if (output == null) {
+                    throw new IOException("Could not open " + uri);
+                }
+                int runs = writeArchive(output);
+                message = String.format("Backup de %d corridas concluído", runs);
+            } catch (IOException | JSONException error) {
+                Log.d("MainActivity", error.getMessage());
+                message = "Falha ao fazer o backup";
+            }
+
+            String toastMessage = message;
+            runOnUiThread(() -> Toast.makeText(this, toastMessage, Toast.LENGTH_LONG).show());
+        });
+    }
+
+    // Tracks are copied point by point from their files into the archive. A
+    // failure while closing it is kept as suppressed by the one that stopped
+    // the copy instead of hiding it.
+    private int writeArchive(OutputStream output) throws IOException, JSONException {
+        JSONArray history = historyStore.getHistory();
+
+        try (HistoryArchiveWriter archive = new HistoryArchiveWriter(output)) {
+            for (int i = 0; i < history.length(); i++) {
+                JSONObject summary = history.getJSONObject(i);
+                long when = summary.getLong("when");
+                int pointCount = TrackStore.getTrackPointCount(this, when);
+
+                archive.writeRun(summary.toString(), pointCount);
+                if (pointCount == 0) {
+                    continue;
+                }
+
+                try (TrackInput input = TrackStore.getTrackSource(this, when).open()) {
+                    for (int point = 0; point < pointCount; point++) {
+                        TrackPoint trackPoint = input.read();
+                        if (trackPoint == null) {
+                            throw new IOException("Truncated track " + when);
+                        }
+                        archive.writePoint(trackPoint);
+                    }
+                }
+            }
+        }
+        return history.length();
+    }
+
+    private void restoreHistory(Uri uri) {
+        if (uri == null) {
+            return;
+        }
+
+        historyStore.execute(() -> {
+            String message;
+            try (InputStream input = getContentResolver().openInputStream(uri)) {
+                if (input == null) {
+                    throw new IOException("Could not open " + uri);
+                }
+                int runs = readArchive(new HistoryArchiveReader(input));
+                message = String.format("%d corridas restauradas", runs);
+            } catch (IOException | JSONException error) {
+                Log.d("MainActivity", error.getMessage());
+                message = "Falha ao restaurar o backup";
+            }
+
+            String toastMessage = message;
+            runOnUiThread(() -> Toast.makeText(this, toastMessage, Toast.LENGTH_LONG).show());
+            loadHistory();
+        });
+    }
+
+    // Runs already in the history, by start time, are skipped. Each track is
+    // streamed point by point to its file while its cells are collected,
+    // and only read back when it went near a segment.
+    private int readArchive(HistoryArchiveReader archive) throws IOException, JSONException {
+        Set<Long> knownRuns = historyStore.getKnownRuns();
+        SegmentStore segments = historyStore.getSegments();
+        List<Segment> segmentList = segments.getSegments();
+
+        List<JSONObject> restored = new ArrayList<>();
+        while (archive.nextRun()) {
+            JSONObject summary = new JSONObject(archive.getSummary());
+            long when = summary.getLong("when");
+            if (!knownRuns.add(when)) {
+                continue;
+            }
+
+            if (archive.getPointCount() > 0) {
+                Set<Long> cells = new LinkedHashSet<>();
+                try (TrackWriter writer = new TrackWriter(new FileOutputStream(TrackStore.getTrackFile(this, when)))) {
+                    TrackPoint point;
+                    while ((point = archive.readPoint()) != null) {
+                        writer.write(point);
+                        cells.add(GridIndex.getCellKey(point.getLatitude(), point.getLongitude()));
+                    }
+                }
+                TrackStore.writeCells(this, when, cells);
+                if (trackCells != null) {
+                    trackCells.addRunCells(when, cells);
+                }
+
+                TrackCellIndex runCells = new TrackCellIndex();
+                runCells.addRunCells(when, cells);
+                List<Segment> nearSegments = new ArrayList<>();
+                for (Segment segment : segmentList) {
+                    if (!runCells.findRuns(segment).isEmpty()) {
+                        nearSegments.add(segment);
+                    }
+                }
+                if (!nearSegments.isEmpty()) {
+                    for (SegmentEffort effort : new SegmentMatcher(nearSegments).match(TrackStore.readTrack(this, when))) {
+                        segments.addEffort(when, effort);
+                    }
+                }
+            }
+
+            restored.add(summary);
+        }
+
+        historyStore.addRuns(restored);
+        historyStore.putSegments(segments);
+        return restored.size();
+    }
+
+    // Matches a saved run against the segments and stores its track cells
+    private void indexRun(long when, List<TrackPoint> track) {
+        SegmentStore segments = historyStore.getSegments();
+
+        StringBuilder message = new StringBuilder();
+        for (SegmentEffort effort : new SegmentMatcher(segments.getSegments()).match(track)) {
+            boolean best = segments.addEffort(when, effort);
+            message.append(message.length() == 0 ? "" : "\n")
+                    .append(effort.getSegment().getName()).append(": ")
+                    .append(Utils.formatTime(Math.round(effort.getDuration())))
+                    .append(best ? " (recorde)" : "");
+        }
+
+        try {
+            TrackStore.writeCells(this, when, track);
+            if (trackCells != null) {
+                trackCells.addRun(when, track);
+            }
+        } catch (IOException error) {
+            Log.d("MainActivity", error.getMessage());
+        }
+
+        historyStore.putSegments(segments);
+
+        if (message.length() > 0) {
+            String toastMessage = message.toString();
+            runOnUiThread(() -> Toast.makeText(this, toastMessage, Toast.LENGTH_LONG).show());
+        }
+    }
+
+    // Assembled once from the cell file of every stored track, older runs
+    // get theirs written then. Runs stored afterwards are added as they are
+    // indexed or restored.
+    private TrackCellIndex getTrackCells() {
+        if (trackCells != null) {
+            return trackCells;
+        }
+
+        SharedPreferences sharedPref = getPreferences(Context.MODE_PRIVATE);
+        if (sharedPref.contains("trackCells")) {
+            sharedPref.edit().remove("trackCells").apply();
+        }
+
+        trackCells = new TrackCellIndex();
+        for (long when : TrackStore.getTrackedRuns(this)) {
+            try {
+                trackCells.addRunCells(when, TrackStore.readCells(this, when));
+            } catch (IOException error) {
+                Log.d("MainActivity", error.getMessage());
+            }
+        }
+        return trackCells;
+    }
+
+    // The track is indexed in the background and then handed to the ingest
+    // thread, which owns the ghost from then on
+    private void loadGhost(HistoryItem item) {
+        backgroundExecutor.execute(() -> {
+            TrackSource source = TrackStore.getTrackSource(this, item.getWhen());
+
+            String message;
+            try (TrackInput input = source.open()) {
+                GhostRun ghost = new GhostRun(item.getWhen(), input);
+                ingestHandler.post(() -> runnerManager.setGhost(ghost));
+                message = String.format("Correndo contra %s (%.2f km)", Utils.formatDateTime(item.getWhen()), ghost.getDistance() / 1000);
+            } catch (IOException error) {
+                Log.d("MainActivity", error.getMessage());
+                message = "Falha ao carregar o percurso";
+            }
+
+            String toastMessage = message;
+            runOnUiThread(() -> Toast.makeText(this, toastMessage, Toast.LENGTH_LONG).show());
+        });
+    }
+
+    private void exportRun(HistoryItem item) {
+        backgroundExecutor.execute(() -> {
+            TrackSource source = TrackStore.getTrackSource(this, item.getWhen());
+            TrackExporter exporter = new TrackExporter(item.getSplitDistance());
+            File directory = getExternalFilesDir("exports");
+            File gpxFile = new File(directory, "run-" + item.getWhen() + ".gpx");
+            File tcxFile = new File(directory, "run-" + item.getWhen() + ".tcx");
+
+            String message;
+            try (Writer gpxWriter = new OutputStreamWriter(new FileOutputStream(gpxFile), StandardCharsets.UTF_8);
+                 Writer tcxWriter = new OutputStreamWriter(new FileOutputStream(tcxFile), StandardCharsets.UTF_8)) {
+                exporter.writeGpx(source, "Corrida " + Utils.formatDateTime(item.getWhen()), gpxWriter);
+                exporter.writeTcx(source, item.getSplits(), item.getSplitTimes(), tcxWriter);
+                message = "Exportado para " + directory.getAbsolutePath();
+            } catch (IOException error) {
+                Log.d("MainActivity", error.getMessage());
+                message = "Falha ao exportar a corrida";
+            }
+
+            String toastMessage = message;
+            runOnUiThread(() -> Toast.makeText(this, toastMessage, Toast.LENGTH_LONG).show());
         });
     }
 
@@ -242,6 +691,8 @@ public class MainActivity extends AppCompatActivity {
     private void initializeTTSUI() {
         // Handles seek bar
         ttsTime = (binding.ttsTime.getProgress() + 1) * 60;
+        int timeInterval = ttsTime;
+        ingestHandler.post(() -> runAnnouncer.setTimeInterval(timeInterval));
         binding.ttsTimeView.setText(String.format("%d s", ttsTime));
         binding.ttsTime.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
@@ -253,58 +704,74 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
                 ttsTime = (progress + 1) * 60;
+                int timeInterval = ttsTime;
+                ingestHandler.post(() -> runAnnouncer.setTimeInterval(timeInterval));
                 binding.ttsTimeView.setText(String.format("%d s", ttsTime));
             }
         });
 
         // Handles checkbox
-        ttsEnabled = binding.ttsEnabled.isChecked();
+        boolean ttsEnabled = binding.ttsEnabled.isChecked();
+        ingestHandler.post(() -> runAnnouncer.setEnabled(ttsEnabled));
         binding.ttsEnabled.setOnCheckedChangeListener((buttonView, isChecked) -> {
-            ttsEnabled = isChecked;
+            ingestHandler.post(() -> runAnnouncer.setEnabled(isChecked));
         });
     }
 
-    private void speakUpdates() {
-        long timeElapsed = runnerManager.getElapsedTime(startTime);
-        if (ttsEnabled && runStarted() && timeElapsed > 0 && timeElapsed % ttsTime == 0) {
-            double currentPacing = runnerManager.getCurrentSpeed();
-            double overallPacing = runnerManager.getOverallSpeed(startTime);
-            double distanceTraveled = runnerManager.getDistanceTraveled(startTime);
+    private void initializeTextToSpeech() {
+        if (textToSpeech != null) {
+            return;
+        }
 
-            String currPaceText = "Rítmo atual é" + numberToTTS(currentPacing);
-            String overallPaceText = "Rítmo global é " + numberToTTS(overallPacing);
-            String distanceText = String.format("Distância percorrida é %.1f quilômetros", distanceTraveled);
-            String fullText = currPaceText + ". " + overallPaceText + ". " + distanceText;
+        textToSpeech = new TextToSpeech(getApplicationContext(), status -> {
+            if (status == TextToSpeech.SUCCESS) {
+                ttsExecutor.execute(() -> textToSpeech.setLanguage(Locale.US));
+            }
+        });
+    }
 
-            textToSpeech.speak(fullText, TextToSpeech.QUEUE_FLUSH, null, "");
+    private void speak(String text) {
+        TextToSpeech tts = textToSpeech;
+        if (tts == null) {
+            return;
         }
+
+        // Queued on its own thread so the UI thread never waits on the TTS engine
+        ttsExecutor.execute(() -> tts.speak(text, TextToSpeech.QUEUE_ADD, null, ""));
+    }
+
+    private void logStartupPhase(String phase) {
+        Log.d("Startup", phase + " at " + (SystemClock.elapsedRealtime() - createTime) + " ms");
     }
 
     private void updateUI() {
-        RunnerLocationReport lastLocation = runnerManager.getLastLocationReport();
-        RunnerLocationReport lastAltitude = runnerManager.getLastAltitudeReport();
+        RunnerSnapshot snapshot = runnerManager.getSnapshot();
 
-        double locationAccuracy = lastLocation != null ? lastLocation.getLocation().getAccuracy() : 0;
-//        String locationProvider = lastLocation != null ? lastLocation.getSource() : "unknown";
-        double altitudeAccuracy = lastAltitude != null ? lastAltitude.getLocation().getVerticalAccuracyMeters() : 0;
-//        String altitudeProvider = lastAltitude != null ? lastAltitude.getSource() : "unknown";
+        binding.gpsStatus.setText(String.format("Acurácia do GPS: %.2f m (⇅ %.2f m)", snapshot.getLocationAccuracy(), snapshot.getAltitudeAccuracy()));
 
-        binding.gpsStatus.setText(String.format("Acurácia do GPS: %.2f m (⇅ %.2f m)", locationAccuracy, altitudeAccuracy));
+        binding.route.setShape(snapshot.getRoute());
 
-        if (runStarted()) {
-            double currentPacing = runnerManager.getCurrentSpeed();
-            double overallPacing = runnerManager.getOverallSpeed(startTime);
-            double distanceTraveled = runnerManager.getDistanceTraveled(startTime);
-            long timeElapsed = runnerManager.getElapsedTime(startTime);
+        if (runStarted() && snapshot.isRunStarted()) {
+            binding.distance.setText(String.format("%.2f km", snapshot.getDistance()));
+            binding.time.setText(Utils.formatTime(snapshot.getMovingTime()) + (snapshot.isPaused() ? " ⏸" : ""));
+            binding.pacing.setText(String.format("%.2f min/km", snapshot.getRunSpeed()));
+            binding.currentPacing.setText(String.format("%.2f min/km", snapshot.getCurrentSpeed()));
+            binding.gpsStatus.append(String.format(" · %.0f ppm", snapshot.getCadence()));
+        }
 
-            binding.distance.setText(String.format("%.2f km", distanceTraveled));
-            binding.time.setText(Utils.formatTime(timeElapsed));
-            binding.pacing.setText(String.format("%.2f min/km", overallPacing));
-            binding.currentPacing.setText(String.format("%.2f min/km", currentPacing));
+        if (Double.isNaN(snapshot.getGhostDistanceGap())) {
+            binding.ghost.setVisibility(View.GONE);
+        } else {
+            String ghostText = String.format("Fantasma: %+.0f m", snapshot.getGhostDistanceGap());
+            if (!Double.isNaN(snapshot.getGhostTimeGap())) {
+                ghostText += String.format(" · %+.0f s", snapshot.getGhostTimeGap());
+            }
+            binding.ghost.setText(ghostText);
+            binding.ghost.setVisibility(View.VISIBLE);
         }
 
         if (!binding.start.isEnabled() && !runStarted()) {
-            binding.start.setEnabled(runnerManager.locationServiceConnected());
+            binding.start.setEnabled(snapshot.isLocationConnected());
         }
     }
 
@@ -313,76 +780,217 @@ public class MainActivity extends AppCompatActivity {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
 
         if (requestCode == LOCATION_PERMISSION_REQUEST_CODE) {
-            if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
-                setupServices();
+            for (int i = 0; i < permissions.length && i < grantResults.length; i++) {
+                if (grantResults[i] != PackageManager.PERMISSION_GRANTED) {
+                    continue;
+                }
+
+                if (permissions[i].equals(android.Manifest.permission.ACCESS_FINE_LOCATION)) {
+                    setupServices();
+                } else if (permissions[i].equals(android.Manifest.permission.ACTIVITY_RECOGNITION) && servicesRegistered) {
+                    // The running service moves from the accelerometer to the step detector
+                    Intent intent = new Intent(this, LocationService.class);
+                    intent.putExtra("refresh_step_sensor", true);
+                    startForegroundService(intent);
+                }
             }
         }
     }
 
     private void startRun() {
-        startTime = Calendar.getInstance().getTimeInMillis();
+        long runStartTime = runnerManager.getCurrentTime();
+        startTime = runStartTime;
+        initializeTextToSpeech();
+
+        // Raw fix and step logs are only kept when asked for, to debug field
+        // problems
+        boolean recordFixes = binding.recordFixesEnabled.isChecked();
+
+        ingestHandler.post(() -> {
+            runAnnouncer.reset();
+            runnerManager.startRun(runStartTime);
+            if (!recordFixes) {
+                return;
+            }
+
+            long when = runnerManager.toWallTime(runStartTime);
+            try {
+                fixLogWriter = new FixLogWriter(new FileOutputStream(TrackStore.getFixLogFile(this, when)));
+                stepLogWriter = new StepLogWriter(new FileOutputStream(TrackStore.getStepLogFile(this, when)));
+            } catch (IOException error) {
+                Log.d("MainActivity", error.getMessage());
+            }
+        });
     }
 
     private void stopRun() {
         long tempStartTime = startTime;
         startTime = -1;
-        storeHistory(tempStartTime);
+
+        // The run state belongs to the ingest thread, so it is read there and
+        // stored by the history store
+        ingestHandler.post(() -> {
+            storeHistory(tempStartTime);
+            runnerManager.stopRun();
+            closeSensorLogs();
+
+            // The next run must not read a replay's stopped clock
+            runnerManager.setClock(liveClock);
+        });
     }
 
-    private void storeHistory(long fromTime) {
-        SharedPreferences sharedPref = getPreferences(Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = sharedPref.edit();
+    // Raw fixes of the run, when recording is enabled, so field problems can
+    // be replayed
+    private void recordFix(RunnerLocationReport report) {
+        if (fixLogWriter == null) {
+            return;
+        }
 
         try {
-            JSONObject historyObj = new JSONObject(sharedPref.getString("history", "{\"history\": []}"));
-            JSONArray history = historyObj.getJSONArray("history");
-
-            JSONObject data = new JSONObject();
-            data.put("when", fromTime);
-            data.put("time", runnerManager.getElapsedTime(fromTime));
-            data.put("distance", runnerManager.getDistanceTraveled(fromTime));
-            data.put("pace", runnerManager.getOverallSpeed(fromTime));
-            data.put("altimetry", runnerManager.getAltitudeDistance(fromTime));
-
-            history.put(history.length(), data);
-            historyObj.put("history", history);
-
-            editor.putString("history", historyObj.toString());
-            editor.apply();
-        } catch(JSONException error) {
-            System.out.println(error);
-        } finally {
-            updateHistory();
+            fixLogWriter.write(report);
+        } catch (IOException error) {
+            Log.d("MainActivity", error.getMessage());
+            closeSensorLogs();
         }
     }
 
-    private void updateHistory() {
-        SharedPreferences sharedPref = getPreferences(Context.MODE_PRIVATE);
+    private void recordStep(long time) {
+        if (stepLogWriter == null) {
+            return;
+        }
 
         try {
-            JSONObject historyObj = new JSONObject(sharedPref.getString("history", "{\"history\": []}"));
-            JSONArray history = historyObj.getJSONArray("history");
+            stepLogWriter.write(time);
+        } catch (IOException error) {
+            Log.d("MainActivity", error.getMessage());
+            closeSensorLogs();
+        }
+    }
 
-            List<HistoryItem> items = new ArrayList<>();
-            for (int i = 0; i < history.length(); i++) {
-                items.add(new HistoryItem(history.getJSONObject(i)));
-            }
+    private void closeSensorLogs() {
+        closeLog(fixLogWriter);
+        closeLog(stepLogWriter);
+        fixLogWriter = null;
+        stepLogWriter = null;
+    }
+
+    private void closeLog(Closeable log) {
+        if (log == null) {
+            return;
+        }
+
+        try {
+            log.close();
+        } catch (IOException error) {
+            Log.d("MainActivity", error.getMessage());
+        }
+    }
 
-            items.sort((historyItem, t1) -> (int) (t1.getWhen() - historyItem.getWhen()));
+    // Takes what is needed from the run on the ingest thread, the best
+    // efforts, files and preferences are left to the history store
+    private void storeHistory(long fromTime) {
+        // The run is kept in clock time, history and tracks in wall time
+        long when = runnerManager.toWallTime(fromTime);
+        List<TrackPoint> track = runnerManager.getWallTrack();
 
-            binding.historyList.setAdapter(new HistoryAdapter(this, items));
-        } catch(JSONException error) {
+        JSONObject data = new JSONObject();
+        try {
+            data.put("when", when);
+            data.put("time", runnerManager.getMovingTime());
+            data.put("distance", runnerManager.getRunDistance());
+            data.put("pace", runnerManager.getRunSpeed());
+            data.put("altimetry", runnerManager.getAscent());
+            data.put("descent", runnerManager.getDescent());
+
+            JSONArray splits = new JSONArray();
+            JSONArray splitTimes = new JSONArray();
+            for (RunSplit split : runnerManager.getSplits()) {
+                splits.put(split.getDuration() / 1000.0);
+                splitTimes.put(runnerManager.toWallTime(split.getClockTime()));
+            }
+            data.put("splitDistance", runnerManager.getSplitDistance());
+            data.put("splits", splits);
+            data.put("splitTimes", splitTimes);
+        } catch (JSONException error) {
             System.out.println(error);
+            return;
         }
+
+        historyStore.execute(() -> {
+            try {
+                List<BestEffort> bestEfforts = new BestEffortFinder(track).findAll(BestEffortFinder.STANDARD_DISTANCES);
+                JSONObject bests = new JSONObject();
+                for (BestEffort effort : bestEfforts) {
+                    bests.put(PersonalRecords.getKey(effort.getDistance()), effort.getDuration());
+                }
+                data.put("bests", bests);
+
+                historyStore.addRuns(Collections.singletonList(data));
+                TrackStore.writeTrack(this, when, track);
+                indexRun(when, track);
+            } catch (JSONException | IOException error) {
+                System.out.println(error);
+            } finally {
+                loadHistory();
+            }
+        });
     }
 
-    private boolean runStarted() {
-        return startTime >= 0;
+    // Parses the history, records and rollups in the background, the list
+    // and summaries are only touched on the UI thread
+    private void loadHistory() {
+        long now = runnerManager.toWallTime(runnerManager.getCurrentTime());
+
+        historyStore.execute(() -> {
+            long loadStart = SystemClock.elapsedRealtime();
+            List<HistoryItem> items = historyStore.readHistory();
+            String records = formatRecords();
+            String stats = formatStats(now);
+            Log.d("Startup", items.size() + " history items loaded in " + (SystemClock.elapsedRealtime() - loadStart) + " ms");
+
+            runOnUiThread(() -> {
+                binding.historyList.setAdapter(new HistoryAdapter(this, items));
+                binding.records.setText(records);
+                binding.stats.setText(stats);
+                logStartupPhase("history");
+            });
+        });
+    }
+
+    private String formatStats(long now) {
+        HistoryRollups rollups = historyStore.getRollups();
+
+        RollupBucket week = rollups.getBucket(HistoryRollups.WEEK, now);
+        RollupBucket month = rollups.getBucket(HistoryRollups.MONTH, now);
+        RollupBucket year = rollups.getBucket(HistoryRollups.YEAR, now);
+        return String.format(
+                "Semana: %.1f km (%d) · Mês: %.1f km (%d) · Ano: %.1f km (%d)",
+                week.getDistance(), week.getCount(),
+                month.getDistance(), month.getCount(),
+                year.getDistance(), year.getCount()
+        );
     }
 
-    private String numberToTTS(double number) {
-        int intPart = (int)number;
-        int fracPart = 100 * (int)(number - (double)intPart);
-        return String.format("%d e %d", intPart, fracPart);
+    private String formatRecords() {
+        PersonalRecords records = historyStore.getRecords();
+
+        StringBuilder text = new StringBuilder("Recordes:");
+        for (double distance : BestEffortFinder.STANDARD_DISTANCES) {
+            double recordTime = records.getRecordTime(distance);
+            text.append(String.format(" %.0f km ", distance / 1000));
+            text.append(Double.isNaN(recordTime) ? "—" : Utils.formatTime(Math.round(recordTime)));
+        }
+
+        SegmentStore segments = historyStore.getSegments();
+        for (Segment segment : segments.getSegments()) {
+            double bestTime = segments.getBestTime(segment.getId());
+            text.append(String.format("\n%s (%.2f km) ", segment.getName(), segment.getLength() / 1000));
+            text.append(Double.isNaN(bestTime) ? "—" : Utils.formatTime(Math.round(bestTime)));
+        }
+        return text.toString();
+    }
+
+    private boolean runStarted() {
+        return startTime >= 0;
     }
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.ellep.runningcompanion;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.List;
+
+// Fastest effort per distance across all runs, updated as each run is saved
+// so lookups never go through the history
+public class PersonalRecords {
+    private JSONObject records;
+
+    public PersonalRecords(String json) {
+        try {
+            records = new JSONObject(json);
+        } catch (JSONException error) {
+            System.out.println(error);
+            records = new JSONObject();
+        }
+    }
+
+    // Returns true if any of the efforts is a new record
+    public boolean update(long when, List<BestEffort> efforts) {
+        boolean improved = false;
+        for (BestEffort effort : efforts) {
+            String key = getKey(effort.getDistance());
+            JSONObject current = records.optJSONObject(key);
+            if (current != null && current.optDouble("time", Double.POSITIVE_INFINITY) <= effort.getDuration()) {
+                continue;
+            }
+
+            try {
+                JSONObject record = new JSONObject();
+                record.put("time", effort.getDuration());
+                record.put("when", when);
+                records.put(key, record);
+                improved = true;
+            } catch (JSONException error) {
+                System.out.println(error);
+            }
+        }
+        return improved;
+    }
+
+    // Record time in seconds, NaN if there is none for the distance
+    public double getRecordTime(double distance) {
+        JSONObject record = records.optJSONObject(getKey(distance));
+        return record != null ? record.optDouble("time", Double.NaN) : Double.NaN;
+    }
+
+    public long getRecordWhen(double distance) {
+        JSONObject record = records.optJSONObject(getKey(distance));
+        return record != null ? record.optLong("when", 0) : 0;
+    }
+
+    public String toJSON() {
+        return records.toString();
+    }
+
+    static String getKey(double distance) {
+        return String.valueOf(Math.round(distance));
+    }
+}
@@ -0,0 +1,12 @@
+package com.ellep.runningcompanion;
+
+// String values by key, the activity's SharedPreferences on the device
+public interface PreferenceStore {
+    String getString(String key, String defaultValue);
+
+    boolean contains(String key);
+
+    void putString(String key, String value);
+
+    void remove(String key);
+}
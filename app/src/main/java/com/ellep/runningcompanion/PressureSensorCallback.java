@@ -0,0 +1,5 @@
+package com.ellep.runningcompanion;
+
+public interface PressureSensorCallback {
+    void onPressureRecieved(long time, float pressure);
+}
@@ -0,0 +1,45 @@
+package com.ellep.runningcompanion;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+
+public class PressureSensorManager {
+    private final int SAMPLING_PERIOD_US = 1000000;
+    private final int MAX_REPORT_LATENCY_US = 5000000;
+
+    private SensorEventListener sensorListener = null;
+
+    public boolean registerSensorListener(Context context, PressureSensorCallback callback) {
+        SensorManager sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        Sensor pressureSensor = sensorManager.getDefaultSensor(Sensor.TYPE_PRESSURE);
+        if (pressureSensor == null) {
+            return false;
+        }
+
+        sensorListener = new SensorEventListener() {
+            @Override
+            public void onSensorChanged(SensorEvent event) {
+                // Event timestamps are in the elapsed realtime base, like ElapsedRealtimeClock
+                callback.onPressureRecieved(event.timestamp / 1000000, event.values[0]);
+            }
+
+            @Override
+            public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+        };
+
+        return sensorManager.registerListener(sensorListener, pressureSensor, SAMPLING_PERIOD_US, MAX_REPORT_LATENCY_US);
+    }
+
+    public void unregisterSensorListener(Context context) {
+        if (sensorListener == null) {
+            return;
+        }
+
+        SensorManager sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        sensorManager.unregisterListener(sensorListener);
+        sensorListener = null;
+    }
+}
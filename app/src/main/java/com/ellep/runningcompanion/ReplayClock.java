@@ -0,0 +1,26 @@
+package com.ellep.runningcompanion;
+
+// Clock driven by the replayed fixes instead of the system time
+public class ReplayClock implements RunnerClock {
+    private volatile long time = 0;
+    private volatile long wallOffset = 0;
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    @Override
+    public long now() {
+        return time;
+    }
+
+    // Replayed times already are unix times unless they were shifted
+    public void setWallOffset(long wallOffset) {
+        this.wallOffset = wallOffset;
+    }
+
+    @Override
+    public long getWallOffset() {
+        return wallOffset;
+    }
+}
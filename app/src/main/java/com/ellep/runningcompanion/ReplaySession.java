@@ -0,0 +1,62 @@
+package com.ellep.runningcompanion;
+
+import java.io.IOException;
+
+// Swaps the live location providers for a fix log replay and back. The
+// providers are stopped when the replay starts and restarted when it ends,
+// whether it finished, failed or was cancelled, unless the session was
+// closed in the meantime.
+public class ReplaySession {
+    private final LiveLocationProviders providers;
+
+    private LocationReplayer replayer = null;
+    private boolean closed = false;
+
+    public ReplaySession(LiveLocationProviders providers) {
+        this.providers = providers;
+    }
+
+    // Returns false when a replay is already running or the session was
+    // closed; play must follow a true result
+    public synchronized boolean begin(LocationReplayer replayer) {
+        if (this.replayer != null || closed) {
+            return false;
+        }
+
+        this.replayer = replayer;
+        providers.stop();
+        return true;
+    }
+
+    // Runs the replay started by begin on the calling thread
+    public int play(FixLogSource source, RunnerReportCallback callback) throws IOException, InterruptedException {
+        try (FixLogReader reader = source.open()) {
+            return getReplayer().replay(reader, callback);
+        } finally {
+            end();
+        }
+    }
+
+    public synchronized boolean isReplaying() {
+        return replayer != null;
+    }
+
+    // Cancels the replay for good, the live providers are left to the caller
+    public synchronized void close() {
+        closed = true;
+        if (replayer != null) {
+            replayer.cancel();
+        }
+    }
+
+    private synchronized LocationReplayer getReplayer() {
+        return replayer;
+    }
+
+    private synchronized void end() {
+        replayer = null;
+        if (!closed) {
+            providers.restart();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.ellep.runningcompanion;
+
+// Time source the replay is paced with, replaced in tests so pacing can be
+// checked without sleeping
+public interface ReplayTimer {
+    long nanoTime();
+
+    void sleep(long nanos) throws InterruptedException;
+}
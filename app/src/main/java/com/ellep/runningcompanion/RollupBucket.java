@@ -0,0 +1,50 @@
+package com.ellep.runningcompanion;
+
+public class RollupBucket {
+    private final String key;
+    private final int count;
+    private final double distance;
+    private final long time;
+    private final double ascent;
+
+    public RollupBucket(String key, int count, double distance, long time, double ascent) {
+        this.key = key;
+        this.count = count;
+        this.distance = distance;
+        this.time = time;
+        this.ascent = ascent;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    // Total distance, in kilometers
+    public double getDistance() {
+        return distance;
+    }
+
+    // Total moving time, in seconds
+    public long getTime() {
+        return time;
+    }
+
+    // Pace over the whole bucket as minutes.seconds per kilometer, like the
+    // run pace, so longer runs weigh more
+    public double getAveragePace() {
+        if (distance <= 0) {
+            return 0;
+        }
+        double rawPace = (time / 60.0) / distance;
+        return Math.min(Utils.fracMinuteToTime(rawPace), 50);
+    }
+
+    // Total ascent, in meters
+    public double getAscent() {
+        return ascent;
+    }
+}
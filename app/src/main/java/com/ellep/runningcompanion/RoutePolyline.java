@@ -0,0 +1,114 @@
+package com.ellep.runningcompanion;
+
+// Multi-resolution polyline of the run track, built incrementally as points
+// are added. Points are projected once into local meters (equirectangular
+// around the first point) and kept in flat float arrays. Level 0 holds every
+// point and each following level only keeps points at least twice as far
+// apart as the previous one, so a renderer can pick the level that matches
+// its zoom and draw a bounded number of points however long the run is.
+// Only the thread adding points may use it, others read a RouteShape.
+public class RoutePolyline {
+    private static final double EARTH_RADIUS = 6371008.8;
+
+    private final int LEVELS = 10;
+    private final double BASE_TOLERANCE = 2.0;
+    private final int INITIAL_CAPACITY = 256;
+
+    private final float[][] points = new float[LEVELS][];
+    private final int[] counts = new int[LEVELS];
+
+    private double originLat = Double.NaN;
+    private double originLon = Double.NaN;
+    private double metersPerDegreeLon = 0;
+
+    private float minX, minY, maxX, maxY;
+    private float lastX, lastY;
+
+    // Incremented on every change, so views only redraw when needed
+    private int version = 0;
+    private RouteShape shape = null;
+
+    public RoutePolyline() {
+        allocate();
+    }
+
+    public void clear() {
+        // Fresh arrays, the old ones may still be referenced by a shape
+        allocate();
+        originLat = Double.NaN;
+        originLon = Double.NaN;
+        version++;
+    }
+
+    public void add(double latitude, double longitude) {
+        if (Double.isNaN(originLat)) {
+            originLat = latitude;
+            originLon = longitude;
+            metersPerDegreeLon = Math.toRadians(EARTH_RADIUS) * Math.cos(Math.toRadians(latitude));
+        }
+
+        float x = (float) ((longitude - originLon) * metersPerDegreeLon);
+        float y = (float) ((latitude - originLat) * Math.toRadians(EARTH_RADIUS));
+
+        if (counts[0] == 0) {
+            minX = maxX = x;
+            minY = maxY = y;
+        } else {
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+        lastX = x;
+        lastY = y;
+
+        append(0, x, y);
+        double tolerance = BASE_TOLERANCE;
+        for (int level = 1; level < LEVELS; level++, tolerance *= 2) {
+            int count = counts[level];
+            if (count > 0) {
+                float dx = x - points[level][count * 2 - 2];
+                float dy = y - points[level][count * 2 - 1];
+                if (dx * dx + dy * dy < tolerance * tolerance) {
+                    // Coarser levels only keep points this level kept
+                    break;
+                }
+            }
+            append(level, x, y);
+        }
+
+        version++;
+    }
+
+    // Cached until the next change
+    public RouteShape getShape() {
+        if (shape == null || shape.getVersion() != version) {
+            shape = new RouteShape(points.clone(), counts.clone(), BASE_TOLERANCE,
+                    minX, minY, maxX, maxY, lastX, lastY, version);
+        }
+        return shape;
+    }
+
+    public int getCount(int level) {
+        return counts[level];
+    }
+
+    private void allocate() {
+        for (int level = 0; level < LEVELS; level++) {
+            points[level] = new float[INITIAL_CAPACITY * 2];
+            counts[level] = 0;
+        }
+    }
+
+    private void append(int level, float x, float y) {
+        int count = counts[level];
+        if (count * 2 == points[level].length) {
+            float[] grown = new float[points[level].length * 2];
+            System.arraycopy(points[level], 0, grown, 0, count * 2);
+            points[level] = grown;
+        }
+        points[level][count * 2] = x;
+        points[level][count * 2 + 1] = y;
+        counts[level] = count + 1;
+    }
+}
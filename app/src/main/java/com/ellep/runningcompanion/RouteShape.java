@@ -0,0 +1,87 @@
+package com.ellep.runningcompanion;
+
+// Immutable view of a RoutePolyline at the time it was taken. The point
+// arrays are shared with the polyline, which only ever appends past the
+// counts captured here, so the shape can be drawn from any thread.
+public class RouteShape {
+    private final float[][] points;
+    private final int[] counts;
+    private final double baseTolerance;
+
+    private final float minX, minY, maxX, maxY;
+    private final float lastX, lastY;
+
+    private final int version;
+
+    public RouteShape(float[][] points, int[] counts, double baseTolerance,
+                      float minX, float minY, float maxX, float maxY,
+                      float lastX, float lastY, int version) {
+        this.points = points;
+        this.counts = counts;
+        this.baseTolerance = baseTolerance;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.lastX = lastX;
+        this.lastY = lastY;
+        this.version = version;
+    }
+
+    // Finest level whose point spacing is at least minSpacing meters and
+    // which has no more than maxPoints points
+    public int selectLevel(double minSpacing, int maxPoints) {
+        int level = 0;
+        while (level < counts.length - 1 && (getTolerance(level) < minSpacing || counts[level] > maxPoints)) {
+            level++;
+        }
+        return level;
+    }
+
+    public double getTolerance(int level) {
+        return level == 0 ? 0 : baseTolerance * (1 << (level - 1));
+    }
+
+    // Interleaved x, y coordinates in meters east and north of the first point.
+    // Only the first getCount(level) pairs belong to this shape.
+    public float[] getPoints(int level) {
+        return points[level];
+    }
+
+    public int getCount(int level) {
+        return counts[level];
+    }
+
+    public boolean isEmpty() {
+        return counts[0] == 0;
+    }
+
+    public float getMinX() {
+        return minX;
+    }
+
+    public float getMinY() {
+        return minY;
+    }
+
+    public float getMaxX() {
+        return maxX;
+    }
+
+    public float getMaxY() {
+        return maxY;
+    }
+
+    // Latest point, which coarser levels may have skipped
+    public float getLastX() {
+        return lastX;
+    }
+
+    public float getLastY() {
+        return lastY;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+}
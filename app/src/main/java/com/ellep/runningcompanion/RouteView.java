@@ -0,0 +1,93 @@
+package com.ellep.runningcompanion;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.core.content.ContextCompat;
+
+// Draws the live run track, fitted to the view. The level of the route
+// shape is picked from the current scale, so at most MAX_DRAWN_POINTS
+// points are drawn and points closer than a couple of pixels are skipped.
+public class RouteView extends View {
+    private final int MAX_DRAWN_POINTS = 1000;
+    private final float MIN_PIXEL_SPACING = 2f;
+    private final float PADDING_DP = 12f;
+    private final float STROKE_DP = 3f;
+    private final float POSITION_RADIUS_DP = 5f;
+
+    private final Paint routePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint positionPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Path path = new Path();
+
+    private RouteShape shape = null;
+
+    public RouteView(Context context) {
+        this(context, null);
+    }
+
+    public RouteView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        float density = getResources().getDisplayMetrics().density;
+        routePaint.setStyle(Paint.Style.STROKE);
+        routePaint.setStrokeWidth(STROKE_DP * density);
+        routePaint.setStrokeJoin(Paint.Join.ROUND);
+        routePaint.setStrokeCap(Paint.Cap.ROUND);
+        routePaint.setColor(ContextCompat.getColor(context, R.color.route));
+        positionPaint.setColor(ContextCompat.getColor(context, R.color.route_position));
+    }
+
+    // Redraws only when the route changed since the last shape
+    public void setShape(RouteShape shape) {
+        boolean changed = shape == null || this.shape == null || shape.getVersion() != this.shape.getVersion();
+        this.shape = shape;
+        if (changed) {
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        RouteShape shape = this.shape;
+        if (shape == null || shape.isEmpty()) {
+            return;
+        }
+
+        float density = getResources().getDisplayMetrics().density;
+        float padding = PADDING_DP * density;
+        float width = getWidth() - 2 * padding;
+        float height = getHeight() - 2 * padding;
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        // Fit the bounds, keeping the aspect ratio and centering the route
+        float spanX = Math.max(shape.getMaxX() - shape.getMinX(), 1f);
+        float spanY = Math.max(shape.getMaxY() - shape.getMinY(), 1f);
+        float scale = Math.min(width / spanX, height / spanY);
+        float offsetX = padding + (width - spanX * scale) / 2 - shape.getMinX() * scale;
+        float offsetY = padding + (height - spanY * scale) / 2 + shape.getMaxY() * scale;
+
+        int level = shape.selectLevel(MIN_PIXEL_SPACING / scale, MAX_DRAWN_POINTS);
+        float[] points = shape.getPoints(level);
+        int count = shape.getCount(level);
+
+        path.rewind();
+        path.moveTo(offsetX + points[0] * scale, offsetY - points[1] * scale);
+        for (int i = 1; i < count; i++) {
+            path.lineTo(offsetX + points[i * 2] * scale, offsetY - points[i * 2 + 1] * scale);
+        }
+
+        float lastX = offsetX + shape.getLastX() * scale;
+        float lastY = offsetY - shape.getLastY() * scale;
+        path.lineTo(lastX, lastY);
+
+        canvas.drawPath(path, routePaint);
+        canvas.drawCircle(lastX, lastY, POSITION_RADIUS_DP * density, positionPaint);
+    }
+}
@@ -0,0 +1,92 @@
+package com.ellep.runningcompanion;
+
+// Announces the run state when the moving time crosses a multiple of the
+// configured interval or when a new split is completed. Each threshold is
+// announced exactly once, even if no snapshot lands exactly on it.
+public class RunAnnouncer implements RunnerSnapshotCallback {
+    private final RunAnnouncerCallback callback;
+
+    private boolean enabled = true;
+    private long timeInterval = 60;
+
+    private long nextTimeAnnouncement = 60;
+    private int lastAnnouncedSplit = 0;
+    private long lastMovingTime = 0;
+
+    public RunAnnouncer(RunAnnouncerCallback callback) {
+        this.callback = callback;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    // Interval between time announcements, in seconds of moving time
+    public void setTimeInterval(long timeInterval) {
+        this.timeInterval = timeInterval;
+        this.nextTimeAnnouncement = nextMultiple(lastMovingTime);
+    }
+
+    public void reset() {
+        lastMovingTime = 0;
+        lastAnnouncedSplit = 0;
+        nextTimeAnnouncement = timeInterval;
+    }
+
+    @Override
+    public void onSnapshot(RunnerSnapshot snapshot) {
+        if (!snapshot.isRunStarted()) {
+            return;
+        }
+
+        lastMovingTime = snapshot.getMovingTime();
+
+        String splitText = null;
+        RunSplit lastSplit = snapshot.getLastSplit();
+        if (lastSplit != null && lastSplit.getNumber() > lastAnnouncedSplit) {
+            lastAnnouncedSplit = lastSplit.getNumber();
+            splitText = buildSplitText(lastSplit);
+        }
+
+        String timeText = null;
+        if (snapshot.getMovingTime() >= nextTimeAnnouncement) {
+            nextTimeAnnouncement = nextMultiple(snapshot.getMovingTime());
+            timeText = buildTimeText(snapshot);
+        }
+
+        if (!enabled || (splitText == null && timeText == null)) {
+            return;
+        }
+
+        if (splitText != null && timeText != null) {
+            callback.onAnnouncement(splitText + ". " + timeText);
+        } else {
+            callback.onAnnouncement(splitText != null ? splitText : timeText);
+        }
+    }
+
+    private long nextMultiple(long movingTime) {
+        return (movingTime / timeInterval + 1) * timeInterval;
+    }
+
+    private String buildSplitText(RunSplit split) {
+        double splitKm = split.getDistance() / split.getNumber() / 1000.0;
+        double splitPace = Utils.fracMinuteToTime((split.getDuration() / 60000.0) / splitKm);
+        return String.format("Parcial %d em %s", split.getNumber(), numberToTTS(splitPace));
+    }
+
+    private String buildTimeText(RunnerSnapshot snapshot) {
+        String currPaceText = "Rítmo atual é " + numberToTTS(snapshot.getCurrentSpeed());
+        String overallPaceText = "Rítmo global é " + numberToTTS(snapshot.getRunSpeed());
+        String distanceText = String.format("Distância percorrida é %.1f quilômetros", snapshot.getDistance());
+        return currPaceText + ". " + overallPaceText + ". " + distanceText;
+    }
+
+    // Paces are encoded as minutes.seconds, so they are rounded to whole
+    // seconds before splitting, 5.596 is spoken as 6 e 0 instead of 5 e 60
+    public static String numberToTTS(double number) {
+        long minutes = (long) number;
+        long totalSeconds = Math.round(minutes * 60 + (number - minutes) * 100);
+        return String.format("%d e %d", totalSeconds / 60, totalSeconds % 60);
+    }
+}
@@ -0,0 +1,5 @@
+package com.ellep.runningcompanion;
+
+public interface RunAnnouncerCallback {
+    void onAnnouncement(String text);
+}
@@ -0,0 +1,42 @@
+package com.ellep.runningcompanion;
+
+public class RunSplit {
+    private final int number;
+    private final double distance;
+    private final long time;
+    private final long duration;
+    private final long clockTime;
+
+    public RunSplit(int number, double distance, long time, long duration, long clockTime) {
+        this.number = number;
+        this.distance = distance;
+        this.time = time;
+        this.duration = duration;
+        this.clockTime = clockTime;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    // Distance of the split boundary from the start of the run, in meters
+    public double getDistance() {
+        return distance;
+    }
+
+    // Moving time when the boundary was crossed, in milliseconds
+    public long getTime() {
+        return time;
+    }
+
+    // Moving time spent on this split, in milliseconds
+    public long getDuration() {
+        return duration;
+    }
+
+    // Clock time when the boundary was crossed, pauses included, so the
+    // split can be found on the recorded track
+    public long getClockTime() {
+        return clockTime;
+    }
+}
@@ -0,0 +1,10 @@
+package com.ellep.runningcompanion;
+
+public interface RunnerClock {
+    // Current time in milliseconds, in the same base as the report times
+    long now();
+
+    // Added to a time of this clock gives unix time in milliseconds, only
+    // needed where times are stored or shown
+    long getWallOffset();
+}
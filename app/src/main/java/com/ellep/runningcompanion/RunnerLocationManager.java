@@ -1,251 +1,460 @@
 package com.ellep.runningcompanion;
 
-import android.location.Location;
-
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
+// All the mutable run state is owned by a single ingest thread: reports,
+// run control and settings must all come from it. Other threads only read
+// getSnapshot(), an immutable snapshot published through a volatile field.
+// Times are in the clock base, the fix times on the device, and only turned
+// into wall time with toWallTime when stored.
 public class RunnerLocationManager {
     private final int MS_PER_TIME_GROUP = 2500;
 
+    private final double MAX_ACCURACY = 5;
+
     private final int MS_WAIT_TIME_BEFORE_DISCONNECT = 10000;
 
-    private List<RunnerLocationReport> locationReports = new ArrayList<>();
+    private final int MAX_CURRENT_SPEED_TIME_BUFFER = 120;
+
+    private final int MS_WITHOUT_FIX_BEFORE_DEAD_RECKONING = 5000;
+
+    private final double DEFAULT_STRIDE = 1.0;
+
+    // About 15 minutes of running without a fix
+    private final int MAX_PENDING_STEPS = 2000;
+
+    private volatile RunnerClock clock;
+
+    private RunnerLocationReport lastLocalizationReport = null;
+    // Time of the last accurate raw fix, before it is grouped
+    private long lastFixTime = -1;
+
+    private long runStartTime = -1;
+    private double runDistance = 0;
+    private final AutoPauseDetector autoPauseDetector = new AutoPauseDetector();
+    private SplitTracker splitTracker = new SplitTracker(1000);
+    private final List<TrackPoint> runTrack = new ArrayList<>();
+    private final RoutePolyline routePolyline = new RoutePolyline();
+
+    private GhostRun ghost = null;
+
+    private final StepCadenceEstimator stepCadenceEstimator = new StepCadenceEstimator(DEFAULT_STRIDE);
+    // Step times not yet attributed to a segment between two fixes
+    private final ArrayDeque<Long> pendingSteps = new ArrayDeque<>();
+    private boolean lastSegmentWasGap = false;
+
+    private final List<RunnerSnapshotCallback> snapshotCallbacks = new ArrayList<>();
+    private volatile RunnerSnapshot snapshot = new RunnerSnapshot(0, false, false, 0, 0, 0, 0, null, 0, false, 0, 0, null, Double.NaN, Double.NaN);
 
     private boolean useWeightSquared = false;
     private int currentSpeedTimeBuffer = 60;
+    private int timeGroupMs = MS_PER_TIME_GROUP;
+    private double maxAccuracy = MAX_ACCURACY;
+    private double maxVerticalAccuracy = MAX_ACCURACY;
+
+    private final RunnerSequenceOptimize localizationOptimize = new RunnerSequenceOptimize() {
+        @Override
+        public boolean isReportValid(RunnerLocationReport report) {
+            return report.hasAccuracy() && report.getAccuracy() <= maxAccuracy;
+        }
 
-    public void addLocationReport(RunnerLocationReport report) {
-        locationReports.add(report);
+        @Override
+        public double getReportWeight(RunnerLocationReport report) {
+            if (useWeightSquared) {
+                return Math.pow(1.0 / report.getAccuracy(), 2);
+            } else{
+                return 1.0 / report.getAccuracy();
+            }
+        }
+    };
+
+    private final RunnerSequenceOptimize altitudeOptimize = new RunnerSequenceOptimize() {
+        @Override
+        public boolean isReportValid(RunnerLocationReport report) {
+            return report.hasVerticalAccuracy() && report.getVerticalAccuracy() <= maxVerticalAccuracy;
+        }
+
+        @Override
+        public double getReportWeight(RunnerLocationReport report) {
+            return 1.0 / report.getVerticalAccuracy();
+        }
+    };
+
+    private final CurrentPaceEstimator currentPaceEstimator = new CurrentPaceEstimator(MAX_CURRENT_SPEED_TIME_BUFFER, currentSpeedTimeBuffer);
+
+    private RunnerSequenceAccumulator localizationAccumulator = new RunnerSequenceAccumulator(MS_PER_TIME_GROUP, localizationOptimize, this::onLocalizationReportClosed);
+
+    private RunnerSequenceAccumulator altitudeAccumulator = new RunnerSequenceAccumulator(MS_PER_TIME_GROUP, altitudeOptimize, this::onAltitudeReportClosed);
+
+    private final ElevationTracker elevationTracker = new ElevationTracker();
+
+    public RunnerLocationManager() {
+        this(new ElapsedRealtimeClock());
     }
 
-    public void setUseWeightSquared(boolean useWeightSquared) {
-        this.useWeightSquared = useWeightSquared;
+    public RunnerLocationManager(RunnerClock clock) {
+        this.clock = clock;
     }
 
-    public boolean isUseWeightSquared(){
-        return this.useWeightSquared;
+    public void setClock(RunnerClock clock) {
+        this.clock = clock;
     }
 
-    public void setCurrentSpeedTimeBuffer(int currentSpeedTimeBuffer) {
-        this.currentSpeedTimeBuffer = currentSpeedTimeBuffer;
+    public RunnerClock getClock() {
+        return clock;
     }
 
-    public int getCurrentSpeedTimeBuffer() {
-        return this.currentSpeedTimeBuffer;
+    // Safe to call from any thread
+    public long getCurrentTime() {
+        return clock.now();
     }
 
-    public double getCurrentSpeed() {
-        long currentTime = Calendar.getInstance().getTimeInMillis();
-        double rawSpeed = getSpeedInInterval(currentTime - currentSpeedTimeBuffer * 1000);
-        double timeSpeed = Utils.fracMinuteToTime(rawSpeed);
-        return Math.min(timeSpeed, 50);
+    // Unix time of a time in the clock base, for storage and display
+    public long toWallTime(long time) {
+        return time + clock.getWallOffset();
     }
 
-    public double getOverallSpeed(long startTime) {
-        double rawSpeed = getSpeedInInterval(startTime);
-        double timeSpeed = Utils.fracMinuteToTime(rawSpeed);
-        return Math.min(timeSpeed, 50);
+    public void addLocationReport(RunnerLocationReport report) {
+        localizationAccumulator.addLocationReport(report);
+        altitudeAccumulator.addLocationReport(report);
+
+        if (localizationOptimize.isReportValid(report)) {
+            lastFixTime = Math.max(lastFixTime, report.getTime());
+        }
+
+        if (runStarted() && report.getTime() >= runStartTime) {
+            autoPauseDetector.addFix(
+                    report.getTime(),
+                    report.getLatitude(),
+                    report.getLongitude(),
+                    report.hasSpeed() && report.hasSpeedAccuracy(),
+                    report.getSpeed(),
+                    report.getSpeedAccuracy()
+            );
+        }
     }
 
-    public long getElapsedTime(long since) {
-        long currentTime = Calendar.getInstance().getTimeInMillis();
-        long timeDiffMs = currentTime - since;
-        return timeDiffMs / 1000;
+    public void addPressureReport(double pressureHpa) {
+        elevationTracker.addPressure(pressureHpa);
     }
 
-    public boolean locationServiceConnected() {
-        RunnerLocationReport lastLocationReport = getLastLocationReport();
-        if (lastLocationReport == null) {
-            return false;
-        }
+    private void onAltitudeReportClosed(RunnerLocationReport report) {
+        elevationTracker.addGpsAltitude(report.getAltitude(), report.getVerticalAccuracy());
+    }
 
-        double lastAccuracy = lastLocationReport.getLocation().getAccuracy();
-        return lastAccuracy > 0 && lastAccuracy <= 5;
+    public void startRun(long startTime) {
+        runStartTime = startTime;
+        runDistance = 0;
+        autoPauseDetector.reset();
+        splitTracker.reset();
+        elevationTracker.resetTotals();
+        runTrack.clear();
+        routePolyline.clear();
+        publishSnapshot();
     }
 
-    public double getSpeedInInterval(long since) {
-        double distanceKm = getDistanceTraveled(since);
-        long currentTime = Calendar.getInstance().getTimeInMillis();
-        long timeDiffMs = currentTime - since;
-        double timeDiffMin = timeDiffMs / 60000.0;
-        return timeDiffMin / distanceKm;
+    public void stopRun() {
+        runStartTime = -1;
+        publishSnapshot();
     }
 
-    public double getDistanceTraveled(long since) {
-        List<RunnerLocationReport> reports = getLocalizationOptimizedSequence(since);
-        return calculateDistanceOfReports(reports);
+    // Previous run to race against, null to race alone
+    public void setGhost(GhostRun ghost) {
+        this.ghost = ghost;
     }
 
-    public double getAltitudeDistance(long since) {
-        List<RunnerLocationReport> reports = getAltitudeOptimizedSequence(since);
-        return calculateAltitudeOfReports(reports);
+    public GhostRun getGhost() {
+        return ghost;
     }
 
-    public double calculateAltitudeOfReports(List<RunnerLocationReport> reports) {
-        double altitude = 0;
-        Location lastLocation = null;
-        for (RunnerLocationReport report : reports) {
-            if (lastLocation != null) {
-                altitude += Math.abs(lastLocation.getAltitude() - report.getLocation().getAltitude());
+    public void addSnapshotCallback(RunnerSnapshotCallback callback) {
+        snapshotCallbacks.add(callback);
+    }
+
+    public RunnerSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public RunnerSnapshot publishSnapshot() {
+        long currentTime = clock.now();
+        RunnerLocationReport lastLocation = getLastLocationReport();
+        RunnerLocationReport lastAltitude = getLastAltitudeReport();
+
+        double ghostDistanceGap = Double.NaN;
+        double ghostTimeGap = Double.NaN;
+        if (ghost != null && runStarted()) {
+            long elapsed = currentTime - runStartTime;
+            double distance = getRunDistance() * 1000.0;
+            ghostDistanceGap = distance - ghost.getDistanceAt(elapsed);
+
+            long ghostTime = ghost.getTimeAt(distance);
+            if (ghostTime >= 0) {
+                ghostTimeGap = (ghostTime - elapsed) / 1000.0;
             }
+        }
 
-            lastLocation = report.getLocation();
+        RunnerSnapshot snapshot = new RunnerSnapshot(
+                currentTime,
+                runStarted(),
+                isPaused(),
+                getMovingTime(),
+                getRunDistance(),
+                getCurrentSpeed(),
+                getRunSpeed(),
+                getLastSplit(),
+                getCadence(),
+                locationServiceConnected(),
+                lastLocation != null && lastLocation.hasAccuracy() ? lastLocation.getAccuracy() : 0,
+                lastAltitude != null && lastAltitude.hasVerticalAccuracy() ? lastAltitude.getVerticalAccuracy() : 0,
+                routePolyline.getShape(),
+                ghostDistanceGap,
+                ghostTimeGap
+        );
+        this.snapshot = snapshot;
+
+        for (RunnerSnapshotCallback callback : snapshotCallbacks) {
+            callback.onSnapshot(snapshot);
         }
+        return snapshot;
+    }
+
+    public boolean runStarted() {
+        return runStartTime >= 0;
+    }
+
+    public boolean isPaused() {
+        return runStarted() && autoPauseDetector.isPaused();
+    }
+
+    // Time spent moving since the run started, in seconds
+    public long getMovingTime() {
+        long currentTime = clock.now();
+        return autoPauseDetector.getMovingTime(currentTime) / 1000;
+    }
 
-        return altitude;
+    // Distance covered while moving since the run started, in kilometers
+    public double getRunDistance() {
+        return (runDistance + getPendingDeadReckonedDistance()) / 1000.0;
     }
 
-    public double calculateDistanceOfReports(List<RunnerLocationReport> reports) {
-        double distance = 0;
-        Location lastLocation = null;
-        for (RunnerLocationReport report : reports) {
-            if (lastLocation != null) {
-                distance += lastLocation.distanceTo(report.getLocation());
+    // Distance walked since the last fix while the GPS is out, not yet
+    // merged into the run distance
+    private double getPendingDeadReckonedDistance() {
+        if (!runStarted() || autoPauseDetector.isPaused() || lastLocalizationReport == null) {
+            return 0;
+        }
+
+        boolean waitingForFix = clock.now() - lastFixTime > MS_WITHOUT_FIX_BEFORE_DEAD_RECKONING;
+        if (waitingForFix) {
+            return stepCadenceEstimator.getDeadReckonedDistance(pendingSteps.size());
+        }
+
+        // Groups close a fix late, so until the groups on both sides of the
+        // gap closed the steps up to the last fix stay counted, otherwise the
+        // distance would drop back until they are merged
+        boolean closingGap = lastFixTime - lastLocalizationReport.getTime() > MS_WITHOUT_FIX_BEFORE_DEAD_RECKONING;
+        if (!closingGap && !lastSegmentWasGap) {
+            return 0;
+        }
+
+        int steps = 0;
+        for (long step : pendingSteps) {
+            if (step > lastFixTime) {
+                break;
             }
+            steps++;
+        }
+        return stepCadenceEstimator.getDeadReckonedDistance(steps);
+    }
 
-            lastLocation = report.getLocation();
+    public void addStepReport(long time) {
+        stepCadenceEstimator.addStep(time);
+        if (pendingSteps.size() >= MAX_PENDING_STEPS) {
+            pendingSteps.removeFirst();
         }
+        pendingSteps.addLast(time);
+    }
 
-        return distance / 1000.0;
+    // Steps per minute
+    public double getCadence() {
+        return stepCadenceEstimator.getCadence(clock.now());
     }
 
-    public RunnerLocationReport getLastLocationReport() {
-        long currentTime = Calendar.getInstance().getTimeInMillis();
-        List<RunnerLocationReport> reports = getLocalizationOptimizedSequence(currentTime - MS_WAIT_TIME_BEFORE_DISCONNECT);
-        if (reports.size() > 0) {
-            Location currentLocation = reports.get(reports.size() - 1).getLocation();
-            if (currentLocation != null)
-                return reports.get(reports.size() - 1);
+    public void setSplitDistance(double splitDistanceMeters) {
+        if (!runStarted()) {
+            splitTracker = new SplitTracker(splitDistanceMeters);
         }
-        return null;
     }
 
-    public RunnerLocationReport getLastAltitudeReport() {
-        long currentTime = Calendar.getInstance().getTimeInMillis();
-        List<RunnerLocationReport> reports = getAltitudeOptimizedSequence(currentTime - MS_WAIT_TIME_BEFORE_DISCONNECT);
-        if (reports.size() > 0) {
-            Location currentLocation = reports.get(reports.size() - 1).getLocation();
-            if (currentLocation != null)
-                return reports.get(reports.size() - 1);
+    public double getSplitDistance() {
+        return splitTracker.getSplitDistance();
+    }
+
+    public List<RunSplit> getSplits() {
+        return splitTracker.getSplits();
+    }
+
+    public RunSplit getLastSplit() {
+        return splitTracker.getLastSplit();
+    }
+
+    // Averaged localization points of the current run
+    public List<TrackPoint> getRunTrack() {
+        return Collections.unmodifiableList(runTrack);
+    }
+
+    // The run track in wall time, as it is stored
+    public List<TrackPoint> getWallTrack() {
+        long wallOffset = clock.getWallOffset();
+        List<TrackPoint> track = new ArrayList<>(runTrack.size());
+        for (TrackPoint point : runTrack) {
+            track.add(new TrackPoint(point.getTime() + wallOffset, point.getLatitude(), point.getLongitude(), point.getAltitude(), point.getDistance()));
         }
-        return null;
+        return track;
     }
 
-    public List<RunnerLocationReport> getLocalizationOptimizedSequence(long since) {
-        return getOptimizedSequence(since, new RunnerSequenceOptimize() {
-            @Override
-            public boolean isReportValid(RunnerLocationReport report) {
-                return report.getLocation().hasAccuracy() && report.getLocation().getAccuracy() <= 5;
-            }
+    // Ascent since the run started, in meters
+    public double getAscent() {
+        return elevationTracker.getAscent();
+    }
 
-            @Override
-            public double getReportWeight(RunnerLocationReport report) {
-                if (useWeightSquared) {
-                    return Math.pow(1.0 / report.getLocation().getAccuracy(), 2);
-                } else{
-                    return 1.0 / report.getLocation().getAccuracy();
-                }
-            }
-        });
+    // Descent since the run started, in meters
+    public double getDescent() {
+        return elevationTracker.getDescent();
     }
 
-    public List<RunnerLocationReport> getAltitudeOptimizedSequence(long since) {
-        return getOptimizedSequence(since, new RunnerSequenceOptimize() {
-            @Override
-            public boolean isReportValid(RunnerLocationReport report) {
-                return report.getLocation().hasVerticalAccuracy() && report.getLocation().getVerticalAccuracyMeters() <= 5;
-            }
+    public double getRunSpeed() {
+        double rawSpeed = (getMovingTime() / 60.0) / getRunDistance();
+        double timeSpeed = Utils.fracMinuteToTime(rawSpeed);
+        return Math.min(timeSpeed, 50);
+    }
 
-            @Override
-            public double getReportWeight(RunnerLocationReport report) {
-                return 1.0 / report.getLocation().getVerticalAccuracyMeters();
-            }
-        });
-    }
-
-    public List<RunnerLocationReport> getOptimizedSequence(long since, RunnerSequenceOptimize optimize) {
-        HashMap<Long, List<RunnerLocationReport>> reportsPerTimeGroup = new HashMap<>();
-
-        for (RunnerLocationReport report : locationReports) {
-            if (optimize.isReportValid(report) && report.getTime() >= since) {
-                long timeGroup = Math.round((double)report.getTime() / MS_PER_TIME_GROUP);
-                if (reportsPerTimeGroup.containsKey(timeGroup)) {
-                    reportsPerTimeGroup.get(timeGroup).add(report);
-                } else {
-                    List<RunnerLocationReport> listOfReports = new ArrayList<>();
-                    listOfReports.add(report);
-                    reportsPerTimeGroup.put(timeGroup, listOfReports);
-                }
+    private void onLocalizationReportClosed(RunnerLocationReport report) {
+        RunnerLocationReport previousReport = lastLocalizationReport;
+        lastLocalizationReport = report;
+
+        // Groups close only when the next one starts, so steps are matched to
+        // the segment by their own timestamps
+        int segmentSteps = 0;
+        while (!pendingSteps.isEmpty() && pendingSteps.peekFirst() <= report.getTime()) {
+            pendingSteps.removeFirst();
+            segmentSteps++;
+        }
+
+        double segmentDistance = 0;
+        if (previousReport != null) {
+            segmentDistance = previousReport.distanceTo(report);
+
+            // Across a GPS gap the straight line cuts every corner, the steps
+            // taken meanwhile give a better estimate. Otherwise the GPS
+            // distance calibrates the stride.
+            boolean gap = report.getTime() - previousReport.getTime() > MS_WITHOUT_FIX_BEFORE_DEAD_RECKONING;
+            if (gap && segmentSteps > 0) {
+                segmentDistance = stepCadenceEstimator.getDeadReckonedDistance(segmentSteps);
+            } else if (!gap) {
+                stepCadenceEstimator.calibrate(segmentDistance, segmentSteps);
             }
+            lastSegmentWasGap = gap;
+        }
+        currentPaceEstimator.addSample(report.getTime(), segmentDistance);
+
+        boolean previousInRun = previousReport != null && runStarted() && previousReport.getTime() >= runStartTime;
+        if (previousInRun && !autoPauseDetector.isPaused()) {
+            runDistance += segmentDistance;
+            splitTracker.addProgress(autoPauseDetector.getMovingTime(), report.getTime(), runDistance);
+        }
+
+        // Points keep the distance counted so far, so a ghost of this run
+        // replays it without redoing the auto-pause
+        if (runStarted() && report.getTime() >= runStartTime) {
+            runTrack.add(new TrackPoint(report.getTime(), report.getLatitude(), report.getLongitude(), elevationTracker.getAltitude(), runDistance));
+            routePolyline.add(report.getLatitude(), report.getLongitude());
+        }
+
+        publishSnapshot();
+    }
+
+    public void setUseWeightSquared(boolean useWeightSquared) {
+        this.useWeightSquared = useWeightSquared;
+    }
+
+    public boolean isUseWeightSquared(){
+        return this.useWeightSquared;
+    }
+
+    // Tuning knobs for offline sweeps, must be set before the first report
+    public void setTimeGroupMs(int timeGroupMs) {
+        this.timeGroupMs = timeGroupMs;
+        localizationAccumulator = new RunnerSequenceAccumulator(timeGroupMs, localizationOptimize, this::onLocalizationReportClosed);
+        altitudeAccumulator = new RunnerSequenceAccumulator(timeGroupMs, altitudeOptimize, this::onAltitudeReportClosed);
+    }
+
+    public int getTimeGroupMs() {
+        return timeGroupMs;
+    }
+
+    public void setMaxAccuracy(double maxAccuracy) {
+        this.maxAccuracy = maxAccuracy;
+    }
+
+    public double getMaxAccuracy() {
+        return maxAccuracy;
+    }
+
+    public void setMaxVerticalAccuracy(double maxVerticalAccuracy) {
+        this.maxVerticalAccuracy = maxVerticalAccuracy;
+    }
+
+    public double getMaxVerticalAccuracy() {
+        return maxVerticalAccuracy;
+    }
+
+    public void setCurrentSpeedTimeBuffer(int currentSpeedTimeBuffer) {
+        this.currentSpeedTimeBuffer = Math.min(currentSpeedTimeBuffer, MAX_CURRENT_SPEED_TIME_BUFFER);
+        currentPaceEstimator.setWindowSeconds(this.currentSpeedTimeBuffer);
+    }
+
+    public int getCurrentSpeedTimeBuffer() {
+        return this.currentSpeedTimeBuffer;
+    }
+
+    public void setCurrentSpeedSmoothing(double smoothingFactor) {
+        currentPaceEstimator.setSmoothingFactor(smoothingFactor);
+    }
+
+    public double getCurrentSpeed() {
+        long currentTime = clock.now();
+        double rawSpeed = currentPaceEstimator.getPace(currentTime);
+        double timeSpeed = Utils.fracMinuteToTime(rawSpeed);
+        return Math.min(timeSpeed, 50);
+    }
+
+    public boolean locationServiceConnected() {
+        RunnerLocationReport lastLocationReport = getLastLocationReport();
+        if (lastLocationReport == null) {
+            return false;
         }
 
-        HashMap<Long, RunnerLocationReport> reportPerTimeGroup = new HashMap<>();
-        for (Map.Entry<Long, List<RunnerLocationReport>> entry : reportsPerTimeGroup.entrySet()) {
-            Long key = entry.getKey();
-            List<RunnerLocationReport> reports = entry.getValue();
-            RunnerLocationReport avgReport = calculateAverageReport(reports, optimize);
-            reportPerTimeGroup.put(key, avgReport);
-        }
-
-        List<Long> keyList = new ArrayList<>(reportPerTimeGroup.keySet());
-        Collections.sort(keyList);
-
-        List<RunnerLocationReport> output = new ArrayList<>();
-        for (Long key : keyList) {
-            output.add(reportPerTimeGroup.get(key));
-        }
-
-        return output;
-    }
-
-    private RunnerLocationReport calculateAverageReport(List<RunnerLocationReport> reports, RunnerSequenceOptimize optimize) {
-        List<Long> times = new ArrayList<>();
-        double averageLat = 0;
-        double averageLon = 0;
-        double averageAltitude = 0;
-        double averageSpeed = 0;
-        float averageAccuracy = 0;
-        float averageAltitudeAccuracy = 0;
-        float averageSpeedAccuracy = 0;
-        double weightSum = 0;
-        for (RunnerLocationReport report : reports) {
-            double reportWeight = optimize.getReportWeight(report);
-            times.add(report.getTime());
-            averageLat += report.getLocation().getLatitude() * reportWeight;
-            averageLon += report.getLocation().getLongitude() * reportWeight;
-            averageAltitude += report.getLocation().getAltitude() * reportWeight;
-            averageSpeed = report.getLocation().getSpeed() * reportWeight;
-            averageAccuracy += report.getLocation().getAccuracy() * reportWeight;
-            averageAltitudeAccuracy += report.getLocation().getVerticalAccuracyMeters() * reportWeight;
-            averageSpeedAccuracy += report.getLocation().getSpeedAccuracyMetersPerSecond() * reportWeight;
-            weightSum += reportWeight;
-        }
-
-        averageLat /= weightSum;
-        averageLon /= weightSum;
-        averageAltitude /= weightSum;
-        averageSpeed /= weightSum;
-        averageAccuracy /= weightSum;
-        averageAltitudeAccuracy /= weightSum;
-        averageSpeedAccuracy /= weightSum;
-
-        Location averageLocation = new Location("");
-        averageLocation.reset();
-        averageLocation.setLatitude(averageLat);
-        averageLocation.setLongitude(averageLon);
-        averageLocation.setAltitude(averageAltitude);
-        averageLocation.setSpeed((float) averageSpeed);
-        averageLocation.setAccuracy(averageAccuracy);
-        averageLocation.setVerticalAccuracyMeters(averageAltitudeAccuracy);
-        averageLocation.setSpeedAccuracyMetersPerSecond(averageSpeedAccuracy);
-
-        Collections.sort(times);
-        long averageTime = times.get(times.size() / 2);
-        return new RunnerLocationReport("average", (long) averageTime, averageLocation);
+        double lastAccuracy = lastLocationReport.getAccuracy();
+        return lastAccuracy > 0 && lastAccuracy <= maxAccuracy;
+    }
+
+    public RunnerLocationReport getLastLocationReport() {
+        return getRecentReport(localizationAccumulator.getLastClosedReport());
+    }
+
+    public RunnerLocationReport getLastAltitudeReport() {
+        return getRecentReport(altitudeAccumulator.getLastClosedReport());
+    }
+
+    private RunnerLocationReport getRecentReport(RunnerLocationReport report) {
+        long currentTime = clock.now();
+        if (report == null || report.getTime() < currentTime - MS_WAIT_TIME_BEFORE_DISCONNECT) {
+            return null;
+        }
+        return report;
     }
 }
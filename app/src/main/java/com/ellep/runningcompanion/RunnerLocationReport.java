@@ -1,22 +1,31 @@
 package com.ellep.runningcompanion;
 
-import android.location.Location;
-
 import androidx.annotation.NonNull;
 
+// Plain copy of the fix fields used by the pipeline, so it runs without the
+// Android location classes (see LocationReportConverter). Missing values are NaN.
 public class RunnerLocationReport {
-    private Location location;
-    private long time;
-    private String source;
+    private final String source;
+    private final long time;
+    private final double latitude;
+    private final double longitude;
+    private final double altitude;
+    private final float accuracy;
+    private final float verticalAccuracy;
+    private final float speed;
+    private final float speedAccuracy;
 
-    public RunnerLocationReport(String source, long time, Location location) {
-        this.location = location;
-        this.time = time;
+    public RunnerLocationReport(String source, long time, double latitude, double longitude, double altitude,
+                                float accuracy, float verticalAccuracy, float speed, float speedAccuracy) {
         this.source = source;
-    }
-
-    public Location getLocation() {
-        return location;
+        this.time = time;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.altitude = altitude;
+        this.accuracy = accuracy;
+        this.verticalAccuracy = verticalAccuracy;
+        this.speed = speed;
+        this.speedAccuracy = speedAccuracy;
     }
 
     public String getSource() {
@@ -27,9 +36,61 @@ public class RunnerLocationReport {
         return time;
     }
 
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public boolean hasAltitude() {
+        return !Double.isNaN(altitude);
+    }
+
+    public double getAltitude() {
+        return altitude;
+    }
+
+    public boolean hasAccuracy() {
+        return !Float.isNaN(accuracy);
+    }
+
+    public float getAccuracy() {
+        return accuracy;
+    }
+
+    public boolean hasVerticalAccuracy() {
+        return !Float.isNaN(verticalAccuracy);
+    }
+
+    public float getVerticalAccuracy() {
+        return verticalAccuracy;
+    }
+
+    public boolean hasSpeed() {
+        return !Float.isNaN(speed);
+    }
+
+    public float getSpeed() {
+        return speed;
+    }
+
+    public boolean hasSpeedAccuracy() {
+        return !Float.isNaN(speedAccuracy);
+    }
+
+    public float getSpeedAccuracy() {
+        return speedAccuracy;
+    }
+
+    public double distanceTo(RunnerLocationReport other) {
+        return Utils.distanceMeters(latitude, longitude, other.latitude, other.longitude);
+    }
+
     @NonNull
     @Override
     public String toString() {
-        return this.time + " " + this.source + " " + this.location;
+        return this.time + " " + this.source + " " + this.latitude + "," + this.longitude + " acc=" + this.accuracy;
     }
 }
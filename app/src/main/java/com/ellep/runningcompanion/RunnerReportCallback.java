@@ -0,0 +1,5 @@
+package com.ellep.runningcompanion;
+
+public interface RunnerReportCallback {
+    void onReport(RunnerLocationReport report);
+}
@@ -0,0 +1,110 @@
+package com.ellep.runningcompanion;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Groups reports by time as they arrive and averages each group once, when a
+// report from a later group shows up.
+public class RunnerSequenceAccumulator {
+    private final int msPerTimeGroup;
+    private final RunnerSequenceOptimize optimize;
+    private final RunnerSequenceCallback callback;
+
+    private final List<RunnerLocationReport> openGroupReports = new ArrayList<>();
+    private long openTimeGroup = Long.MIN_VALUE;
+
+    private RunnerLocationReport lastClosedReport = null;
+
+    public RunnerSequenceAccumulator(int msPerTimeGroup, RunnerSequenceOptimize optimize, RunnerSequenceCallback callback) {
+        this.msPerTimeGroup = msPerTimeGroup;
+        this.optimize = optimize;
+        this.callback = callback;
+    }
+
+    public void addLocationReport(RunnerLocationReport report) {
+        if (!optimize.isReportValid(report)) {
+            return;
+        }
+
+        long timeGroup = Math.round((double) report.getTime() / msPerTimeGroup);
+        if (timeGroup < openTimeGroup) {
+            // Its group was already averaged and published
+            return;
+        }
+
+        if (timeGroup != openTimeGroup) {
+            closeOpenGroup();
+            openTimeGroup = timeGroup;
+        }
+
+        openGroupReports.add(report);
+    }
+
+    public void closeOpenGroup() {
+        if (openGroupReports.isEmpty()) {
+            return;
+        }
+
+        lastClosedReport = calculateAverageReport(openGroupReports, optimize);
+        openGroupReports.clear();
+        callback.onReportClosed(lastClosedReport);
+    }
+
+    public RunnerLocationReport getLastClosedReport() {
+        return lastClosedReport;
+    }
+
+    private static RunnerLocationReport calculateAverageReport(List<RunnerLocationReport> reports, RunnerSequenceOptimize optimize) {
+        List<Long> times = new ArrayList<>();
+        WeightedAverage averageLat = new WeightedAverage();
+        WeightedAverage averageLon = new WeightedAverage();
+        WeightedAverage averageAltitude = new WeightedAverage();
+        WeightedAverage averageSpeed = new WeightedAverage();
+        WeightedAverage averageAccuracy = new WeightedAverage();
+        WeightedAverage averageAltitudeAccuracy = new WeightedAverage();
+        WeightedAverage averageSpeedAccuracy = new WeightedAverage();
+        for (RunnerLocationReport report : reports) {
+            double reportWeight = optimize.getReportWeight(report);
+            times.add(report.getTime());
+            averageLat.add(report.getLatitude(), reportWeight);
+            averageLon.add(report.getLongitude(), reportWeight);
+            averageAltitude.add(report.getAltitude(), reportWeight);
+            averageSpeed.add(report.getSpeed(), reportWeight);
+            averageAccuracy.add(report.getAccuracy(), reportWeight);
+            averageAltitudeAccuracy.add(report.getVerticalAccuracy(), reportWeight);
+            averageSpeedAccuracy.add(report.getSpeedAccuracy(), reportWeight);
+        }
+
+        Collections.sort(times);
+        long averageTime = times.get(times.size() / 2);
+        return new RunnerLocationReport(
+                "average",
+                averageTime,
+                averageLat.get(),
+                averageLon.get(),
+                averageAltitude.get(),
+                (float) averageAccuracy.get(),
+                (float) averageAltitudeAccuracy.get(),
+                (float) averageSpeed.get(),
+                (float) averageSpeedAccuracy.get()
+        );
+    }
+
+    // Weighted mean of the values that are present (not NaN)
+    private static class WeightedAverage {
+        private double sum = 0;
+        private double weightSum = 0;
+
+        void add(double value, double weight) {
+            if (!Double.isNaN(value)) {
+                sum += value * weight;
+                weightSum += weight;
+            }
+        }
+
+        double get() {
+            return weightSum > 0 ? sum / weightSum : Double.NaN;
+        }
+    }
+}
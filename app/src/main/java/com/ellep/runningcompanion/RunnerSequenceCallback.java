@@ -0,0 +1,5 @@
+package com.ellep.runningcompanion;
+
+public interface RunnerSequenceCallback {
+    void onReportClosed(RunnerLocationReport report);
+}
@@ -0,0 +1,109 @@
+package com.ellep.runningcompanion;
+
+// Immutable view of the run state at a given time. Every value is computed
+// once when the snapshot is built, so readers never recompute metrics and
+// can read it from any thread.
+public class RunnerSnapshot {
+    private final long time;
+    private final boolean runStarted;
+    private final boolean paused;
+    private final long movingTime;
+    private final double distance;
+    private final double currentSpeed;
+    private final double runSpeed;
+    private final RunSplit lastSplit;
+    private final double cadence;
+    private final boolean locationConnected;
+    private final double locationAccuracy;
+    private final double altitudeAccuracy;
+    private final RouteShape route;
+    private final double ghostDistanceGap;
+    private final double ghostTimeGap;
+
+    public RunnerSnapshot(long time, boolean runStarted, boolean paused, long movingTime, double distance, double currentSpeed, double runSpeed, RunSplit lastSplit, double cadence,
+                          boolean locationConnected, double locationAccuracy, double altitudeAccuracy, RouteShape route,
+                          double ghostDistanceGap, double ghostTimeGap) {
+        this.time = time;
+        this.runStarted = runStarted;
+        this.paused = paused;
+        this.movingTime = movingTime;
+        this.distance = distance;
+        this.currentSpeed = currentSpeed;
+        this.runSpeed = runSpeed;
+        this.lastSplit = lastSplit;
+        this.cadence = cadence;
+        this.locationConnected = locationConnected;
+        this.locationAccuracy = locationAccuracy;
+        this.altitudeAccuracy = altitudeAccuracy;
+        this.route = route;
+        this.ghostDistanceGap = ghostDistanceGap;
+        this.ghostTimeGap = ghostTimeGap;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public boolean isRunStarted() {
+        return runStarted;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    // Moving time since the run started, in seconds
+    public long getMovingTime() {
+        return movingTime;
+    }
+
+    // Moving distance since the run started, in kilometers
+    public double getDistance() {
+        return distance;
+    }
+
+    public double getCurrentSpeed() {
+        return currentSpeed;
+    }
+
+    public double getRunSpeed() {
+        return runSpeed;
+    }
+
+    public RunSplit getLastSplit() {
+        return lastSplit;
+    }
+
+    // Steps per minute
+    public double getCadence() {
+        return cadence;
+    }
+
+    public boolean isLocationConnected() {
+        return locationConnected;
+    }
+
+    // Accuracy of the last averaged fix, in meters (0 when there is none)
+    public double getLocationAccuracy() {
+        return locationAccuracy;
+    }
+
+    public double getAltitudeAccuracy() {
+        return altitudeAccuracy;
+    }
+
+    public RouteShape getRoute() {
+        return route;
+    }
+
+    // Meters ahead of the ghost (negative when behind), NaN without a ghost
+    public double getGhostDistanceGap() {
+        return ghostDistanceGap;
+    }
+
+    // Seconds ahead of the ghost at the current distance (negative when
+    // behind), NaN without a ghost or once past the ghost's distance
+    public double getGhostTimeGap() {
+        return ghostTimeGap;
+    }
+}
@@ -0,0 +1,5 @@
+package com.ellep.runningcompanion;
+
+public interface RunnerSnapshotCallback {
+    void onSnapshot(RunnerSnapshot snapshot);
+}
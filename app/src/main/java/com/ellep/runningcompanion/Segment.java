@@ -0,0 +1,112 @@
+package com.ellep.runningcompanion;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.List;
+
+// Named stretch of a route, such as a hill or a lap of the park. It is kept
+// as a few checkpoints along the path, the first being the start and the
+// last the end, plus the path length, and is matched against every run.
+public class Segment {
+    private static final int MAX_CHECKPOINTS = 12;
+
+    private final long id;
+    private final String name;
+    private final double length;
+    private final double[] latitudes;
+    private final double[] longitudes;
+
+    public Segment(long id, String name, double length, double[] latitudes, double[] longitudes) {
+        this.id = id;
+        this.name = name;
+        this.length = length;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+    }
+
+    public Segment(JSONObject json) throws JSONException {
+        id = json.getLong("id");
+        name = json.getString("name");
+        length = json.getDouble("length");
+
+        JSONArray lats = json.getJSONArray("lats");
+        JSONArray lons = json.getJSONArray("lons");
+        latitudes = new double[lats.length()];
+        longitudes = new double[lons.length()];
+        for (int i = 0; i < latitudes.length; i++) {
+            latitudes[i] = lats.getDouble(i);
+            longitudes[i] = lons.getDouble(i);
+        }
+    }
+
+    // Segment following the whole track, with checkpoints evenly spaced by distance
+    public static Segment fromTrack(long id, String name, List<TrackPoint> track) {
+        double[] distances = new double[track.size()];
+        for (int i = 1; i < track.size(); i++) {
+            TrackPoint a = track.get(i - 1);
+            TrackPoint b = track.get(i);
+            distances[i] = distances[i - 1] + Utils.distanceMeters(a.getLatitude(), a.getLongitude(), b.getLatitude(), b.getLongitude());
+        }
+
+        double length = distances.length > 0 ? distances[distances.length - 1] : 0;
+        int checkpoints = Math.min(MAX_CHECKPOINTS, track.size());
+        double[] latitudes = new double[checkpoints];
+        double[] longitudes = new double[checkpoints];
+
+        int point = 0;
+        for (int k = 0; k < checkpoints; k++) {
+            double target = checkpoints > 1 ? length * k / (checkpoints - 1) : 0;
+            while (point < track.size() - 1 && distances[point] < target) {
+                point++;
+            }
+            latitudes[k] = track.get(point).getLatitude();
+            longitudes[k] = track.get(point).getLongitude();
+        }
+
+        return new Segment(id, name, length, latitudes, longitudes);
+    }
+
+    public JSONObject toJSON() throws JSONException {
+        JSONArray lats = new JSONArray();
+        JSONArray lons = new JSONArray();
+        for (int i = 0; i < latitudes.length; i++) {
+            lats.put(latitudes[i]);
+            lons.put(longitudes[i]);
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("id", id);
+        json.put("name", name);
+        json.put("length", length);
+        json.put("lats", lats);
+        json.put("lons", lons);
+        return json;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Meters
+    public double getLength() {
+        return length;
+    }
+
+    public int getCheckpointCount() {
+        return latitudes.length;
+    }
+
+    public double getLatitude(int checkpoint) {
+        return latitudes[checkpoint];
+    }
+
+    public double getLongitude(int checkpoint) {
+        return longitudes[checkpoint];
+    }
+}
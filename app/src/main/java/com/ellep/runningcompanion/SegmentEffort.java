@@ -0,0 +1,33 @@
+package com.ellep.runningcompanion;
+
+public class SegmentEffort {
+    private final Segment segment;
+    private final long startTime;
+    private final double duration;
+    private final double distance;
+
+    public SegmentEffort(Segment segment, long startTime, double duration, double distance) {
+        this.segment = segment;
+        this.startTime = startTime;
+        this.duration = duration;
+        this.distance = distance;
+    }
+
+    public Segment getSegment() {
+        return segment;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    // Seconds
+    public double getDuration() {
+        return duration;
+    }
+
+    // Meters actually covered between the matched start and end
+    public double getDistance() {
+        return distance;
+    }
+}
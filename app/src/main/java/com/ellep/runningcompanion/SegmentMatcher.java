@@ -0,0 +1,152 @@
+package com.ellep.runningcompanion;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Finds every pass over the known segments in a track. Segment starts are
+// kept in a grid, so each point only looks at the segments starting in the
+// cells around it; a start within START_RADIUS is then verified by walking
+// the track forward, passing the checkpoints in order, until the end is
+// reached with a distance close to the segment length. The cost grows with
+// the track length and the number of passes, not with the number of segments.
+public class SegmentMatcher {
+    private final double START_RADIUS = 25;
+    private final double CHECKPOINT_RADIUS = 30;
+    private final double MIN_LENGTH_RATIO = 0.85;
+    private final double MAX_LENGTH_RATIO = 1.2;
+
+    private final GridIndex<Segment> startIndex = new GridIndex<>();
+
+    public SegmentMatcher(List<Segment> segments) {
+        for (Segment segment : segments) {
+            add(segment);
+        }
+    }
+
+    public void add(Segment segment) {
+        if (segment.getCheckpointCount() >= 2) {
+            startIndex.add(segment.getLatitude(0), segment.getLongitude(0), segment);
+        }
+    }
+
+    public List<SegmentEffort> match(List<TrackPoint> track) {
+        List<SegmentEffort> efforts = new ArrayList<>();
+        int count = track.size();
+        if (count < 2 || startIndex.isEmpty()) {
+            return efforts;
+        }
+
+        double[] distances = new double[count];
+        for (int i = 1; i < count; i++) {
+            distances[i] = distances[i - 1] + distance(track.get(i - 1), track.get(i));
+        }
+
+        // A segment can't start again before its previous pass ended
+        Map<Segment, Integer> nextStart = new HashMap<>();
+
+        List<Segment> candidates = new ArrayList<>();
+        long candidatesCell = 0;
+        boolean hasCandidates = false;
+
+        for (int i = 0; i < count - 1; i++) {
+            TrackPoint point = track.get(i);
+
+            // Consecutive points mostly share a cell, so the lookup is reused
+            long cell = GridIndex.getCellKey(point.getLatitude(), point.getLongitude());
+            if (!hasCandidates || cell != candidatesCell) {
+                candidates.clear();
+                startIndex.collectNear(point.getLatitude(), point.getLongitude(), candidates);
+                candidatesCell = cell;
+                hasCandidates = true;
+            }
+
+            for (Segment segment : candidates) {
+                Integer allowedFrom = nextStart.get(segment);
+                if (allowedFrom != null && i < allowedFrom) {
+                    continue;
+                }
+
+                if (distance(point, segment, 0) > START_RADIUS) {
+                    continue;
+                }
+
+                // Start on the point closest to the segment start while the
+                // track stays within the radius, so GPS noise doesn't start early
+                int start = closest(track, i, segment, 0, count - 1);
+                int end = verify(track, distances, start, segment);
+                if (end < 0) {
+                    nextStart.put(segment, start + 1);
+                    continue;
+                }
+
+                TrackPoint startPoint = track.get(start);
+                TrackPoint endPoint = track.get(end);
+                efforts.add(new SegmentEffort(segment, startPoint.getTime(),
+                        (endPoint.getTime() - startPoint.getTime()) / 1000.0, distances[end] - distances[start]));
+                nextStart.put(segment, end);
+            }
+        }
+
+        return efforts;
+    }
+
+    // Index of the point where the pass starting at start ends, -1 if the
+    // track doesn't follow the segment from there
+    private int verify(List<TrackPoint> track, double[] distances, int start, Segment segment) {
+        int last = segment.getCheckpointCount() - 1;
+        double maxDistance = segment.getLength() * MAX_LENGTH_RATIO + START_RADIUS;
+        double minDistance = segment.getLength() * MIN_LENGTH_RATIO;
+
+        int checkpoint = 1;
+        for (int j = start + 1; j < track.size(); j++) {
+            double traveled = distances[j] - distances[start];
+            if (traveled > maxDistance) {
+                return -1;
+            }
+
+            TrackPoint point = track.get(j);
+            while (checkpoint < last && distance(point, segment, checkpoint) <= CHECKPOINT_RADIUS) {
+                checkpoint++;
+            }
+            if (checkpoint < last || traveled < minDistance) {
+                continue;
+            }
+
+            if (distance(point, segment, last) > START_RADIUS) {
+                continue;
+            }
+
+            return closest(track, j, segment, last, track.size() - 1);
+        }
+        return -1;
+    }
+
+    // Point closest to the checkpoint among those from the given one on that
+    // stay within START_RADIUS of it, up to limit
+    private int closest(List<TrackPoint> track, int from, Segment segment, int checkpoint, int limit) {
+        int best = from;
+        double bestDistance = distance(track.get(from), segment, checkpoint);
+        for (int j = from + 1; j <= limit; j++) {
+            double distance = distance(track.get(j), segment, checkpoint);
+            if (distance > START_RADIUS) {
+                break;
+            }
+            if (distance < bestDistance) {
+                best = j;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    private static double distance(TrackPoint a, TrackPoint b) {
+        return Utils.distanceMeters(a.getLatitude(), a.getLongitude(), b.getLatitude(), b.getLongitude());
+    }
+
+    private static double distance(TrackPoint point, Segment segment, int checkpoint) {
+        return Utils.distanceMeters(point.getLatitude(), point.getLongitude(),
+                segment.getLatitude(checkpoint), segment.getLongitude(checkpoint));
+    }
+}
@@ -0,0 +1,120 @@
+package com.ellep.runningcompanion;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Named segments along with every pass over them, as {"segments": [...]}
+// where each segment also holds its efforts as [{"when", "time"}]
+public class SegmentStore {
+    private JSONArray segments;
+
+    public SegmentStore(String json) {
+        try {
+            segments = new JSONObject(json).getJSONArray("segments");
+        } catch (JSONException error) {
+            System.out.println(error);
+            segments = new JSONArray();
+        }
+    }
+
+    public List<Segment> getSegments() {
+        List<Segment> result = new ArrayList<>();
+        for (int i = 0; i < segments.length(); i++) {
+            try {
+                result.add(new Segment(segments.getJSONObject(i)));
+            } catch (JSONException error) {
+                System.out.println(error);
+            }
+        }
+        return result;
+    }
+
+    public void add(Segment segment) throws JSONException {
+        JSONObject json = segment.toJSON();
+        json.put("efforts", new JSONArray());
+        segments.put(json);
+    }
+
+    // Returns true if the effort is the best on its segment. Only one effort
+    // is kept per run, the fastest.
+    public boolean addEffort(long when, SegmentEffort effort) {
+        JSONObject segment = find(effort.getSegment().getId());
+        if (segment == null) {
+            return false;
+        }
+
+        try {
+            JSONArray efforts = segment.optJSONArray("efforts");
+            if (efforts == null) {
+                efforts = new JSONArray();
+                segment.put("efforts", efforts);
+            }
+
+            double best = Double.POSITIVE_INFINITY;
+            JSONObject sameRun = null;
+            for (int i = 0; i < efforts.length(); i++) {
+                JSONObject other = efforts.getJSONObject(i);
+                if (other.optLong("when", 0) == when) {
+                    sameRun = other;
+                } else {
+                    best = Math.min(best, other.optDouble("time", Double.POSITIVE_INFINITY));
+                }
+            }
+
+            if (sameRun == null) {
+                sameRun = new JSONObject();
+                sameRun.put("when", when);
+                sameRun.put("time", effort.getDuration());
+                efforts.put(sameRun);
+            } else if (effort.getDuration() < sameRun.optDouble("time", Double.POSITIVE_INFINITY)) {
+                sameRun.put("time", effort.getDuration());
+            }
+            return sameRun.optDouble("time", Double.POSITIVE_INFINITY) < best;
+        } catch (JSONException error) {
+            System.out.println(error);
+            return false;
+        }
+    }
+
+    // Best time on the segment in seconds, NaN if it was never run
+    public double getBestTime(long segmentId) {
+        JSONObject segment = find(segmentId);
+        JSONArray efforts = segment != null ? segment.optJSONArray("efforts") : null;
+        if (efforts == null || efforts.length() == 0) {
+            return Double.NaN;
+        }
+
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < efforts.length(); i++) {
+            JSONObject effort = efforts.optJSONObject(i);
+            if (effort != null) {
+                best = Math.min(best, effort.optDouble("time", Double.POSITIVE_INFINITY));
+            }
+        }
+        return best;
+    }
+
+    public String toJSON() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("segments", segments);
+        } catch (JSONException error) {
+            System.out.println(error);
+        }
+        return json.toString();
+    }
+
+    private JSONObject find(long segmentId) {
+        for (int i = 0; i < segments.length(); i++) {
+            JSONObject segment = segments.optJSONObject(i);
+            if (segment != null && segment.optLong("id", 0) == segmentId) {
+                return segment;
+            }
+        }
+        return null;
+    }
+}
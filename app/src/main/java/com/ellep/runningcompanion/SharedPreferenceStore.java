@@ -0,0 +1,33 @@
+package com.ellep.runningcompanion;
+
+import android.content.SharedPreferences;
+
+// Changes are visible to the next read right away and written to disk in
+// the background
+public class SharedPreferenceStore implements PreferenceStore {
+    private final SharedPreferences preferences;
+
+    public SharedPreferenceStore(SharedPreferences preferences) {
+        this.preferences = preferences;
+    }
+
+    @Override
+    public String getString(String key, String defaultValue) {
+        return preferences.getString(key, defaultValue);
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return preferences.contains(key);
+    }
+
+    @Override
+    public void putString(String key, String value) {
+        preferences.edit().putString(key, value).apply();
+    }
+
+    @Override
+    public void remove(String key) {
+        preferences.edit().remove(key).apply();
+    }
+}
@@ -0,0 +1,75 @@
+package com.ellep.runningcompanion;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Detects split boundaries as the run distance grows. The crossing time is
+// interpolated between the two progress updates around each boundary, both
+// in moving time and in clock time.
+public class SplitTracker {
+    private final double splitDistance;
+
+    private final List<RunSplit> splits = new ArrayList<>();
+
+    private long lastTime = 0;
+    private long lastClockTime = -1;
+    private double lastDistance = 0;
+    private long lastSplitTime = 0;
+
+    public SplitTracker(double splitDistance) {
+        this.splitDistance = splitDistance;
+    }
+
+    public void reset() {
+        splits.clear();
+        lastTime = 0;
+        lastClockTime = -1;
+        lastDistance = 0;
+        lastSplitTime = 0;
+    }
+
+    // Both values are cumulative since the start of the run (ms and meters)
+    public RunSplit addProgress(long time, double distance) {
+        return addProgress(time, time, distance);
+    }
+
+    // clockTime is the time of the update on the run's clock, used to cut
+    // the recorded track at the same place as the split
+    public RunSplit addProgress(long time, long clockTime, double distance) {
+        if (lastClockTime < 0) {
+            // No moving time had passed when the run started
+            lastClockTime = clockTime - time;
+        }
+
+        RunSplit lastCrossed = null;
+        double nextBoundary = (splits.size() + 1) * splitDistance;
+        while (distance >= nextBoundary && distance > lastDistance) {
+            double fraction = (nextBoundary - lastDistance) / (distance - lastDistance);
+            long crossingTime = lastTime + Math.round(fraction * (time - lastTime));
+            long crossingClockTime = lastClockTime + Math.round(fraction * (clockTime - lastClockTime));
+
+            lastCrossed = new RunSplit(splits.size() + 1, nextBoundary, crossingTime, crossingTime - lastSplitTime, crossingClockTime);
+            splits.add(lastCrossed);
+            lastSplitTime = crossingTime;
+            nextBoundary = (splits.size() + 1) * splitDistance;
+        }
+
+        lastTime = time;
+        lastClockTime = clockTime;
+        lastDistance = distance;
+        return lastCrossed;
+    }
+
+    public double getSplitDistance() {
+        return splitDistance;
+    }
+
+    public List<RunSplit> getSplits() {
+        return Collections.unmodifiableList(splits);
+    }
+
+    public RunSplit getLastSplit() {
+        return splits.isEmpty() ? null : splits.get(splits.size() - 1);
+    }
+}
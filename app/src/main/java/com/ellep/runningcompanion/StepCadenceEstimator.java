@@ -0,0 +1,63 @@
+package com.ellep.runningcompanion;
+
+import java.util.ArrayDeque;
+
+// Cadence over a sliding window of steps and a stride length calibrated
+// against GPS distance while the GPS is good, used to dead-reckon the
+// distance covered while it isn't.
+public class StepCadenceEstimator {
+    private final long CADENCE_WINDOW_MS = 10000;
+    private final double STRIDE_SMOOTHING = 0.1;
+    private final double MIN_CALIBRATION_DISTANCE = 5.0;
+    private final int MIN_CALIBRATION_STEPS = 3;
+    private final double MIN_STRIDE = 0.3;
+    private final double MAX_STRIDE = 2.5;
+
+    private final ArrayDeque<Long> windowSteps = new ArrayDeque<>();
+
+    private double stride;
+
+    public StepCadenceEstimator(double initialStride) {
+        this.stride = initialStride;
+    }
+
+    public void addStep(long time) {
+        windowSteps.addLast(time);
+        while (!windowSteps.isEmpty() && windowSteps.peekFirst() < time - CADENCE_WINDOW_MS) {
+            windowSteps.removeFirst();
+        }
+    }
+
+    // Steps per minute, 0 when no steps were detected recently
+    public double getCadence(long now) {
+        while (!windowSteps.isEmpty() && windowSteps.peekFirst() < now - CADENCE_WINDOW_MS) {
+            windowSteps.removeFirst();
+        }
+        if (windowSteps.size() < 2) {
+            return 0;
+        }
+
+        long span = windowSteps.peekLast() - windowSteps.peekFirst();
+        return span > 0 ? (windowSteps.size() - 1) * 60000.0 / span : 0;
+    }
+
+    public void calibrate(double gpsDistance, int steps) {
+        if (gpsDistance < MIN_CALIBRATION_DISTANCE || steps < MIN_CALIBRATION_STEPS) {
+            return;
+        }
+
+        double measuredStride = gpsDistance / steps;
+        if (measuredStride >= MIN_STRIDE && measuredStride <= MAX_STRIDE) {
+            stride += STRIDE_SMOOTHING * (measuredStride - stride);
+        }
+    }
+
+    // Stride length, in meters
+    public double getStride() {
+        return stride;
+    }
+
+    public double getDeadReckonedDistance(int steps) {
+        return steps * stride;
+    }
+}
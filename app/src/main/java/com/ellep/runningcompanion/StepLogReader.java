@@ -0,0 +1,33 @@
+package com.ellep.runningcompanion;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class StepLogReader implements Closeable {
+    private final DataInputStream input;
+
+    public StepLogReader(InputStream inputStream) throws IOException {
+        input = new DataInputStream(new BufferedInputStream(inputStream));
+        if (input.readInt() != StepLogWriter.MAGIC) {
+            throw new IOException("Not a step log");
+        }
+    }
+
+    // Returns -1 once the end of the log is reached
+    public long read() throws IOException {
+        try {
+            return input.readLong();
+        } catch (EOFException error) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
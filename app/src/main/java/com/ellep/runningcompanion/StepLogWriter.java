@@ -0,0 +1,29 @@
+package com.ellep.runningcompanion;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Raw step log recorded next to the fix log, one time per detected step, so
+// dead reckoning can be replayed along with the fixes
+public class StepLogWriter implements Closeable {
+    public static final int MAGIC = 0x50525374;
+
+    private final DataOutputStream output;
+
+    public StepLogWriter(OutputStream outputStream) throws IOException {
+        output = new DataOutputStream(new BufferedOutputStream(outputStream));
+        output.writeInt(MAGIC);
+    }
+
+    public void write(long time) throws IOException {
+        output.writeLong(time);
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+}
@@ -0,0 +1,5 @@
+package com.ellep.runningcompanion;
+
+public interface StepSensorCallback {
+    void onStepDetected(long time);
+}
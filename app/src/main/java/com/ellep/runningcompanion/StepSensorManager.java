@@ -0,0 +1,74 @@
+package com.ellep.runningcompanion;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+
+import androidx.core.app.ActivityCompat;
+
+// Delivers steps from the step detector sensor, or from the accelerometer
+// when the device has none or activity recognition wasn't granted. Events are batched by the sensor hub up to the
+// max report latency, each step keeps its own timestamp.
+public class StepSensorManager {
+    private final int MAX_REPORT_LATENCY_US = 2000000;
+    private final int ACCELEROMETER_SAMPLING_PERIOD_US = 20000;
+
+    private SensorEventListener sensorListener = null;
+
+    public boolean registerSensorListener(Context context, StepSensorCallback callback) {
+        SensorManager sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        boolean canRecognizeActivity = ActivityCompat.checkSelfPermission(context, android.Manifest.permission.ACTIVITY_RECOGNITION) == PackageManager.PERMISSION_GRANTED;
+        Sensor stepSensor = canRecognizeActivity ? sensorManager.getDefaultSensor(Sensor.TYPE_STEP_DETECTOR) : null;
+        Sensor accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+
+        if (stepSensor != null) {
+            sensorListener = new SensorEventListener() {
+                @Override
+                public void onSensorChanged(SensorEvent event) {
+                    callback.onStepDetected(toClockTime(event.timestamp));
+                }
+
+                @Override
+                public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+            };
+            return sensorManager.registerListener(sensorListener, stepSensor, SensorManager.SENSOR_DELAY_NORMAL, MAX_REPORT_LATENCY_US);
+        }
+
+        if (accelerometer != null) {
+            AccelerometerStepDetector stepDetector = new AccelerometerStepDetector();
+            sensorListener = new SensorEventListener() {
+                @Override
+                public void onSensorChanged(SensorEvent event) {
+                    long time = toClockTime(event.timestamp);
+                    if (stepDetector.addSample(time, event.values[0], event.values[1], event.values[2])) {
+                        callback.onStepDetected(time);
+                    }
+                }
+
+                @Override
+                public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+            };
+            return sensorManager.registerListener(sensorListener, accelerometer, ACCELEROMETER_SAMPLING_PERIOD_US, MAX_REPORT_LATENCY_US);
+        }
+
+        return false;
+    }
+
+    public void unregisterSensorListener(Context context) {
+        if (sensorListener == null) {
+            return;
+        }
+
+        SensorManager sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        sensorManager.unregisterListener(sensorListener);
+        sensorListener = null;
+    }
+
+    // Event timestamps are in the elapsed realtime base, like ElapsedRealtimeClock
+    private static long toClockTime(long eventTimestampNanos) {
+        return eventTimestampNanos / 1000000;
+    }
+}
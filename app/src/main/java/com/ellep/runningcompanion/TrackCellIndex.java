@@ -0,0 +1,83 @@
+package com.ellep.runningcompanion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Grid cells crossed by each stored run. A new segment only has to be
+// verified against the runs that went near all of its checkpoints instead
+// of reading every stored track. Each run's cells are kept in a small file
+// next to its track, written once when the run is saved. The index is
+// assembled from those files the first time a segment needs it and kept in
+// memory from then on, with new runs added as they are saved.
+public class TrackCellIndex {
+    public static final int MAGIC = 0x50524331;
+
+    private final GridIndex<Long> runs = new GridIndex<>();
+
+    public void addRun(long when, List<TrackPoint> track) {
+        addRunCells(when, getCells(track));
+    }
+
+    public void addRunCells(long when, Collection<Long> cells) {
+        for (long cell : cells) {
+            runs.add(cell, when);
+        }
+    }
+
+    // Runs that passed near every checkpoint of the segment
+    public Set<Long> findRuns(Segment segment) {
+        Set<Long> result = new LinkedHashSet<>();
+        runs.collectNear(segment.getLatitude(0), segment.getLongitude(0), result);
+
+        Set<Long> near = new LinkedHashSet<>();
+        for (int checkpoint = 1; checkpoint < segment.getCheckpointCount() && !result.isEmpty(); checkpoint++) {
+            near.clear();
+            runs.collectNear(segment.getLatitude(checkpoint), segment.getLongitude(checkpoint), near);
+            result.retainAll(near);
+        }
+        return result;
+    }
+
+    public static Set<Long> getCells(List<TrackPoint> track) {
+        Set<Long> cells = new LinkedHashSet<>();
+        for (TrackPoint point : track) {
+            cells.add(GridIndex.getCellKey(point.getLatitude(), point.getLongitude()));
+        }
+        return cells;
+    }
+
+    // Cell file: a magic header, the cell count and the cell keys
+    public static void writeCells(OutputStream outputStream, Collection<Long> cells) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream))) {
+            output.writeInt(MAGIC);
+            output.writeInt(cells.size());
+            for (long cell : cells) {
+                output.writeLong(cell);
+            }
+        }
+    }
+
+    public static Set<Long> readCells(InputStream inputStream) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(inputStream))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Not a cell file");
+            }
+
+            int count = input.readInt();
+            Set<Long> cells = new LinkedHashSet<>();
+            for (int i = 0; i < count; i++) {
+                cells.add(input.readLong());
+            }
+            return cells;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.ellep.runningcompanion;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Streams a track to GPX 1.1 or TCX, one point at a time. Laps are cut every
+// lapDistance meters; GPX gets one track segment per lap and TCX gets one Lap
+// element per lap. When the split times recorded during the run are known,
+// TCX laps are cut at those times and completed laps take their totals from
+// the splits, so each lap's time and distance cover the same stretch. Older
+// runs and the last, partial lap are cut and measured on the track itself.
+public class TrackExporter {
+    private static final String CREATOR = "Pellezinho's Running";
+
+    private final double lapDistance;
+
+    public TrackExporter(double lapDistance) {
+        this.lapDistance = lapDistance;
+    }
+
+    public void writeGpx(TrackSource source, String name, Writer writer) throws IOException {
+        BufferedWriter output = new BufferedWriter(writer);
+        StringBuilder line = new StringBuilder(128);
+
+        output.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        output.write("<gpx version=\"1.1\" creator=\"" + CREATOR + "\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n");
+        output.write(" <trk>\n");
+        output.write("  <name>" + escape(name) + "</name>\n");
+
+        try (TrackInput input = source.open()) {
+            LapCounter lapCounter = new LapCounter(Collections.emptyList());
+            int currentLap = -1;
+
+            TrackPoint point;
+            while ((point = input.read()) != null) {
+                int lap = lapCounter.add(point);
+                if (lap != currentLap) {
+                    if (currentLap >= 0) {
+                        output.write("  </trkseg>\n");
+                    }
+                    output.write("  <trkseg>\n");
+                    currentLap = lap;
+                }
+
+                line.setLength(0);
+                line.append("   <trkpt lat=\"").append(point.getLatitude())
+                        .append("\" lon=\"").append(point.getLongitude()).append("\">");
+                if (point.hasAltitude()) {
+                    line.append("<ele>").append(point.getAltitude()).append("</ele>");
+                }
+                line.append("<time>");
+                appendIsoTime(line, point.getTime());
+                line.append("</time></trkpt>\n");
+                output.append(line);
+            }
+
+            if (currentLap >= 0) {
+                output.write("  </trkseg>\n");
+            }
+        }
+
+        output.write(" </trk>\n");
+        output.write("</gpx>\n");
+        output.flush();
+    }
+
+    public void writeTcx(TrackSource source, Writer writer) throws IOException {
+        writeTcx(source, Collections.emptyList(), Collections.emptyList(), writer);
+    }
+
+    // splits holds the moving time of each completed lap in seconds and
+    // splitTimes the wall time when it ended; without the times the splits
+    // can't be placed on the track and are left out
+    public void writeTcx(TrackSource source, List<Double> splits, List<Long> splitTimes, Writer writer) throws IOException {
+        if (splitTimes.size() != splits.size()) {
+            splitTimes = Collections.emptyList();
+        }
+
+        List<LapSummary> laps = summarizeLaps(source, splitTimes);
+        for (int i = 0; i < laps.size() && i < splitTimes.size(); i++) {
+            laps.get(i).seconds = splits.get(i);
+            laps.get(i).distance = lapDistance;
+        }
+
+        BufferedWriter output = new BufferedWriter(writer);
+        StringBuilder line = new StringBuilder(256);
+
+        output.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        output.write("<TrainingCenterDatabase xmlns=\"http://www.garmin.com/xmlschemas/TrainingCenterDatabase/v2\">\n");
+        output.write(" <Activities>\n");
+        output.write("  <Activity Sport=\"Running\">\n");
+
+        line.setLength(0);
+        line.append("   <Id>");
+        appendIsoTime(line, laps.isEmpty() ? 0 : laps.get(0).startTime);
+        line.append("</Id>\n");
+        output.append(line);
+
+        try (TrackInput input = source.open()) {
+            LapCounter lapCounter = new LapCounter(splitTimes);
+            int currentLap = -1;
+
+            TrackPoint point;
+            while ((point = input.read()) != null) {
+                int lap = lapCounter.add(point);
+                if (lap != currentLap) {
+                    if (currentLap >= 0) {
+                        output.write("    </Track>\n   </Lap>\n");
+                    }
+
+                    // Laps passed between two points are closed without points
+                    for (int skipped = currentLap + 1; skipped < lap; skipped++) {
+                        appendLapStart(line, laps.get(skipped));
+                        line.append("   </Lap>\n");
+                        output.append(line);
+                    }
+
+                    appendLapStart(line, laps.get(lap));
+                    line.append("    <Track>\n");
+                    output.append(line);
+                    currentLap = lap;
+                }
+
+                line.setLength(0);
+                line.append("     <Trackpoint><Time>");
+                appendIsoTime(line, point.getTime());
+                line.append("</Time><Position><LatitudeDegrees>").append(point.getLatitude())
+                        .append("</LatitudeDegrees><LongitudeDegrees>").append(point.getLongitude())
+                        .append("</LongitudeDegrees></Position>");
+                if (point.hasAltitude()) {
+                    line.append("<AltitudeMeters>").append(point.getAltitude()).append("</AltitudeMeters>");
+                }
+                line.append("<DistanceMeters>").append(lapCounter.getDistance()).append("</DistanceMeters></Trackpoint>\n");
+                output.append(line);
+            }
+
+            if (currentLap >= 0) {
+                output.write("    </Track>\n   </Lap>\n");
+            }
+        }
+
+        output.write("  </Activity>\n");
+        output.write(" </Activities>\n");
+        output.write("</TrainingCenterDatabase>\n");
+        output.flush();
+    }
+
+    private void appendLapStart(StringBuilder line, LapSummary summary) {
+        line.setLength(0);
+        line.append("   <Lap StartTime=\"");
+        appendIsoTime(line, summary.startTime);
+        line.append("\">\n    <TotalTimeSeconds>").append(summary.seconds)
+                .append("</TotalTimeSeconds>\n    <DistanceMeters>").append(summary.distance)
+                .append("</DistanceMeters>\n    <Calories>0</Calories>\n    <Intensity>Active</Intensity>\n")
+                .append("    <TriggerMethod>Distance</TriggerMethod>\n");
+    }
+
+    private List<LapSummary> summarizeLaps(TrackSource source, List<Long> splitTimes) throws IOException {
+        List<LapSummary> laps = new ArrayList<>();
+        try (TrackInput input = source.open()) {
+            LapCounter lapCounter = new LapCounter(splitTimes);
+            LapSummary summary = null;
+            double lapStartDistance = 0;
+
+            TrackPoint point;
+            while ((point = input.read()) != null) {
+                int lap = lapCounter.add(point);
+                if (summary != null) {
+                    // Laps end where the next one starts, so no segment is left out
+                    summary.seconds = (point.getTime() - summary.startTime) / 1000.0;
+                    summary.distance = lapCounter.getDistance() - lapStartDistance;
+                }
+
+                while (laps.size() <= lap) {
+                    summary = new LapSummary(point.getTime());
+                    lapStartDistance = lapCounter.getDistance();
+                    laps.add(summary);
+                }
+            }
+        }
+        return laps;
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    // Appends an ISO 8601 UTC timestamp with milliseconds, without going
+    // through the java.time formatters for every point
+    static void appendIsoTime(StringBuilder builder, long unixTimeMs) {
+        long days = Math.floorDiv(unixTimeMs, 86400000L);
+        long msOfDay = Math.floorMod(unixTimeMs, 86400000L);
+
+        // Civil date from days since the epoch (Howard Hinnant's algorithm)
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        builder.append(year).append('-');
+        appendPadded(builder, month, 2).append('-');
+        appendPadded(builder, day, 2).append('T');
+        appendPadded(builder, msOfDay / 3600000, 2).append(':');
+        appendPadded(builder, msOfDay / 60000 % 60, 2).append(':');
+        appendPadded(builder, msOfDay / 1000 % 60, 2).append('.');
+        appendPadded(builder, msOfDay % 1000, 3).append('Z');
+    }
+
+    private static StringBuilder appendPadded(StringBuilder builder, long value, int digits) {
+        for (long limit = 10; digits > 1; digits--, limit *= 10) {
+            if (value < limit) {
+                builder.append('0');
+            }
+        }
+        return builder.append(value);
+    }
+
+    // Assigns consecutive points to laps, at the split times when they are
+    // given and by cumulative distance otherwise. A lap starts at the first
+    // point past its boundary, and a jump over several boundaries closes
+    // every lap in between.
+    private class LapCounter {
+        private final List<Long> splitTimes;
+        private TrackPoint lastPoint = null;
+        private double distance = 0;
+        private int lap = 0;
+
+        LapCounter(List<Long> splitTimes) {
+            this.splitTimes = splitTimes;
+        }
+
+        int add(TrackPoint point) {
+            if (lastPoint != null) {
+                distance += Utils.distanceMeters(lastPoint.getLatitude(), lastPoint.getLongitude(), point.getLatitude(), point.getLongitude());
+            }
+            lastPoint = point;
+
+            if (splitTimes.isEmpty()) {
+                lap = Math.max(lap, (int) Math.floor(distance / lapDistance));
+            } else {
+                while (lap < splitTimes.size() && point.getTime() >= splitTimes.get(lap)) {
+                    lap++;
+                }
+            }
+            return lap;
+        }
+
+        double getDistance() {
+            return distance;
+        }
+    }
+
+    private static class LapSummary {
+        private final long startTime;
+        private double seconds = 0;
+        private double distance = 0;
+
+        LapSummary(long startTime) {
+            this.startTime = startTime;
+        }
+    }
+}
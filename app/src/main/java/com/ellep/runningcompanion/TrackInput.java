@@ -0,0 +1,9 @@
+package com.ellep.runningcompanion;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+public interface TrackInput extends Closeable {
+    // Returns null once the end of the track is reached
+    TrackPoint read() throws IOException;
+}
@@ -0,0 +1,52 @@
+package com.ellep.runningcompanion;
+
+public class TrackPoint {
+    private final long time;
+    private final double latitude;
+    private final double longitude;
+    private final double altitude;
+    private final double distance;
+
+    public TrackPoint(long time, double latitude, double longitude, double altitude) {
+        this(time, latitude, longitude, altitude, Double.NaN);
+    }
+
+    public TrackPoint(long time, double latitude, double longitude, double altitude, double distance) {
+        this.time = time;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.altitude = altitude;
+        this.distance = distance;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    // NaN when the altitude is unknown
+    public double getAltitude() {
+        return altitude;
+    }
+
+    public boolean hasAltitude() {
+        return !Double.isNaN(altitude);
+    }
+
+    // Moving distance of the run at this point in meters, as it was counted
+    // live (auto-pause and dead reckoning included). NaN when unknown.
+    public double getDistance() {
+        return distance;
+    }
+
+    public boolean hasDistance() {
+        return !Double.isNaN(distance);
+    }
+}
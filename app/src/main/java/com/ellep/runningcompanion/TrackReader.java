@@ -0,0 +1,53 @@
+package com.ellep.runningcompanion;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class TrackReader implements TrackInput {
+    private final DataInputStream input;
+    private final boolean hasDistance;
+
+    public TrackReader(InputStream inputStream) throws IOException {
+        input = new DataInputStream(new BufferedInputStream(inputStream));
+        int magic = input.readInt();
+        if (magic != TrackWriter.MAGIC && magic != TrackWriter.LEGACY_MAGIC) {
+            throw new IOException("Not a track file");
+        }
+        hasDistance = magic == TrackWriter.MAGIC;
+    }
+
+    // Size of each point after the header, given the file's magic
+    public static int getPointSize(int magic) throws IOException {
+        if (magic == TrackWriter.MAGIC) {
+            return TrackWriter.POINT_SIZE;
+        }
+        if (magic == TrackWriter.LEGACY_MAGIC) {
+            return TrackWriter.LEGACY_POINT_SIZE;
+        }
+        throw new IOException("Not a track file");
+    }
+
+    @Override
+    public TrackPoint read() throws IOException {
+        long time;
+        try {
+            time = input.readLong();
+        } catch (EOFException error) {
+            return null;
+        }
+
+        double latitude = input.readDouble();
+        double longitude = input.readDouble();
+        double altitude = input.readDouble();
+        double distance = hasDistance ? input.readDouble() : Double.NaN;
+        return new TrackPoint(time, latitude, longitude, altitude, distance);
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
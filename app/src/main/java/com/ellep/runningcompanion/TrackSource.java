@@ -0,0 +1,8 @@
+package com.ellep.runningcompanion;
+
+import java.io.IOException;
+
+// Something that can be read as a track more than once
+public interface TrackSource {
+    TrackInput open() throws IOException;
+}
@@ -0,0 +1,134 @@
+package com.ellep.runningcompanion;
+
+import android.content.Context;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+// Keeps one track file, its grid cells (and one raw fix log) per run, named
+// after the run start time
+public class TrackStore {
+    private static final String TRACKS_DIR = "tracks";
+    private static final String FIXES_DIR = "fixes";
+
+    public static File getTrackFile(Context context, long when) {
+        File directory = new File(context.getFilesDir(), TRACKS_DIR);
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        return new File(directory, when + ".trk");
+    }
+
+    public static File getCellFile(Context context, long when) {
+        File directory = new File(context.getFilesDir(), TRACKS_DIR);
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        return new File(directory, when + ".cel");
+    }
+
+    public static File getFixLogFile(Context context, long when) {
+        File directory = new File(context.getFilesDir(), FIXES_DIR);
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        return new File(directory, when + ".fix");
+    }
+
+    public static File getStepLogFile(Context context, long when) {
+        File directory = new File(context.getFilesDir(), FIXES_DIR);
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        return new File(directory, when + ".stp");
+    }
+
+    public static boolean hasTrack(Context context, long when) {
+        return getTrackFile(context, when).exists();
+    }
+
+    public static void writeTrack(Context context, long when, List<TrackPoint> points) throws IOException {
+        try (TrackWriter writer = new TrackWriter(new FileOutputStream(getTrackFile(context, when)))) {
+            for (TrackPoint point : points) {
+                writer.write(point);
+            }
+        }
+    }
+
+    // Track files are a header followed by fixed size points
+    public static int getTrackPointCount(Context context, long when) throws IOException {
+        File file = getTrackFile(context, when);
+        if (!file.exists()) {
+            return 0;
+        }
+
+        int magic;
+        try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            magic = input.readInt();
+        }
+        return (int) ((file.length() - TrackWriter.HEADER_SIZE) / TrackReader.getPointSize(magic));
+    }
+
+    public static TrackSource getTrackSource(Context context, long when) {
+        File file = getTrackFile(context, when);
+        return () -> new TrackReader(new FileInputStream(file));
+    }
+
+    public static List<TrackPoint> readTrack(Context context, long when) throws IOException {
+        List<TrackPoint> points = new ArrayList<>();
+        try (TrackInput input = getTrackSource(context, when).open()) {
+            TrackPoint point;
+            while ((point = input.read()) != null) {
+                points.add(point);
+            }
+        }
+        return points;
+    }
+
+    public static void writeCells(Context context, long when, List<TrackPoint> track) throws IOException {
+        writeCells(context, when, TrackCellIndex.getCells(track));
+    }
+
+    public static void writeCells(Context context, long when, Set<Long> cells) throws IOException {
+        TrackCellIndex.writeCells(new FileOutputStream(getCellFile(context, when)), cells);
+    }
+
+    // Cells of a run, computed from its track and stored the first time they
+    // are asked for
+    public static Set<Long> readCells(Context context, long when) throws IOException {
+        File file = getCellFile(context, when);
+        if (!file.exists()) {
+            List<TrackPoint> track = readTrack(context, when);
+            writeCells(context, when, track);
+            return TrackCellIndex.getCells(track);
+        }
+        return TrackCellIndex.readCells(new FileInputStream(file));
+    }
+
+    // Start times of every run with a stored track
+    public static List<Long> getTrackedRuns(Context context) {
+        List<Long> runs = new ArrayList<>();
+        File[] files = new File(context.getFilesDir(), TRACKS_DIR).listFiles();
+        if (files == null) {
+            return runs;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(".trk")) {
+                try {
+                    runs.add(Long.parseLong(name.substring(0, name.length() - 4)));
+                } catch (NumberFormatException error) {
+                    System.out.println(error);
+                }
+            }
+        }
+        return runs;
+    }
+}
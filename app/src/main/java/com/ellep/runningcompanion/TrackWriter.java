@@ -0,0 +1,39 @@
+package com.ellep.runningcompanion;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Binary track format: a magic header followed by fixed size records
+// (time, latitude, longitude, altitude, moving distance), written one point
+// at a time. Tracks stored before the distance was kept have the legacy
+// magic and records without it.
+public class TrackWriter implements Closeable {
+    public static final int MAGIC = 0x50524B32;
+    public static final int LEGACY_MAGIC = 0x50524B31;
+    public static final int HEADER_SIZE = 4;
+    public static final int POINT_SIZE = 8 * 5;
+    public static final int LEGACY_POINT_SIZE = 8 * 4;
+
+    private final DataOutputStream output;
+
+    public TrackWriter(OutputStream outputStream) throws IOException {
+        output = new DataOutputStream(new BufferedOutputStream(outputStream));
+        output.writeInt(MAGIC);
+    }
+
+    public void write(TrackPoint point) throws IOException {
+        output.writeLong(point.getTime());
+        output.writeDouble(point.getLatitude());
+        output.writeDouble(point.getLongitude());
+        output.writeDouble(point.getAltitude());
+        output.writeDouble(point.getDistance());
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+}
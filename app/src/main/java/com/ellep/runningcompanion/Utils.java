@@ -6,6 +6,8 @@ import java.time.format.DateTimeFormatter;
 import java.util.TimeZone;
 
 public class Utils {
+    private static final double EARTH_RADIUS_METERS = 6371008.8;
+
     public static double fracMinuteToTime(double fracMinutes) {
         int intPart = (int)fracMinutes;
         double fracPart = fracMinutes - (double)intPart;
@@ -39,4 +41,59 @@ public class Utils {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern);
         return triggerTime.format(formatter);
     }
+
+    // Distance on the WGS84 ellipsoid (Vincenty's inverse formula), the same
+    // model used by Location.distanceTo
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double a = 6378137.0;
+        double f = 1 / 298.257223563;
+        double b = a * (1 - f);
+
+        double l = Math.toRadians(lon2 - lon1);
+        double u1 = Math.atan((1 - f) * Math.tan(Math.toRadians(lat1)));
+        double u2 = Math.atan((1 - f) * Math.tan(Math.toRadians(lat2)));
+        double sinU1 = Math.sin(u1), cosU1 = Math.cos(u1);
+        double sinU2 = Math.sin(u2), cosU2 = Math.cos(u2);
+
+        double lambda = l;
+        for (int iteration = 0; iteration < 20; iteration++) {
+            double sinLambda = Math.sin(lambda), cosLambda = Math.cos(lambda);
+            double sinSigma = Math.sqrt((cosU2 * sinLambda) * (cosU2 * sinLambda)
+                    + (cosU1 * sinU2 - sinU1 * cosU2 * cosLambda) * (cosU1 * sinU2 - sinU1 * cosU2 * cosLambda));
+            if (sinSigma == 0) {
+                return 0;
+            }
+
+            double cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+            double sigma = Math.atan2(sinSigma, cosSigma);
+            double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+            double cosSqAlpha = 1 - sinAlpha * sinAlpha;
+            double cos2SigmaM = cosSqAlpha != 0 ? cosSigma - 2 * sinU1 * sinU2 / cosSqAlpha : 0;
+            double c = f / 16 * cosSqAlpha * (4 + f * (4 - 3 * cosSqAlpha));
+
+            double previousLambda = lambda;
+            lambda = l + (1 - c) * f * sinAlpha
+                    * (sigma + c * sinSigma * (cos2SigmaM + c * cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)));
+
+            if (Math.abs(lambda - previousLambda) < 1e-12) {
+                double uSq = cosSqAlpha * (a * a - b * b) / (b * b);
+                double bigA = 1 + uSq / 16384 * (4096 + uSq * (-768 + uSq * (320 - 175 * uSq)));
+                double bigB = uSq / 1024 * (256 + uSq * (-128 + uSq * (74 - 47 * uSq)));
+                double deltaSigma = bigB * sinSigma * (cos2SigmaM + bigB / 4 * (cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)
+                        - bigB / 6 * cos2SigmaM * (-3 + 4 * sinSigma * sinSigma) * (-3 + 4 * cos2SigmaM * cos2SigmaM)));
+                return b * bigA * (sigma - deltaSigma);
+            }
+        }
+
+        // Nearly antipodal points, fall back to the spherical distance
+        return sphericalDistanceMeters(lat1, lon1, lat2, lon2);
+    }
+
+    public static double sphericalDistanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(h)));
+    }
 }
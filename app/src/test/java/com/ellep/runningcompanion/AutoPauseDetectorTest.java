@@ -0,0 +1,111 @@
+package com.ellep.runningcompanion;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AutoPauseDetectorTest {
+    private static final long START_TIME = 1760000000000L;
+    private static final double METERS_PER_DEGREE = 111195.0;
+    private static final double LATITUDE = -22.9;
+    private static final double LONGITUDE = -43.2;
+
+    private static void fix(AutoPauseDetector detector, long second, double north, double speed, double speedAccuracy) {
+        detector.addFix(START_TIME + second * 1000, LATITUDE + north / METERS_PER_DEGREE, LONGITUDE,
+                !Double.isNaN(speed), speed, speedAccuracy);
+    }
+
+    @Test
+    public void running_neverPauses() {
+        AutoPauseDetector detector = new AutoPauseDetector();
+        for (int second = 0; second <= 60; second++) {
+            fix(detector, second, second * 3.0, 3.0, 0.5);
+            assertFalse(detector.isPaused());
+        }
+        assertEquals(60000, detector.getMovingTime());
+    }
+
+    @Test
+    public void jitterWithoutSpeed_pausesOnTheCluster() {
+        AutoPauseDetector detector = new AutoPauseDetector();
+        Random random = new Random(7);
+        for (int second = 0; second < 30; second++) {
+            fix(detector, second, random.nextGaussian(), Double.NaN, Double.NaN);
+        }
+
+        assertTrue(detector.isPaused());
+        // Only the time before the pause was detected counts
+        assertEquals(4000, detector.getMovingTime());
+    }
+
+    @Test
+    public void slowReliableSpeed_pauses() {
+        AutoPauseDetector detector = new AutoPauseDetector();
+        for (int second = 0; second < 10; second++) {
+            fix(detector, second, 0, 0.2, 0.5);
+        }
+        assertTrue(detector.isPaused());
+    }
+
+    @Test
+    public void reliableRunningSpeed_preventsPauseInsideTheCluster() {
+        // A slow lap around a tiny track keeps the fixes within the radius
+        AutoPauseDetector detector = new AutoPauseDetector();
+        for (int second = 0; second < 30; second++) {
+            fix(detector, second, second % 2, 2.0, 0.5);
+        }
+        assertFalse(detector.isPaused());
+    }
+
+    @Test
+    public void displacement_resumes() {
+        AutoPauseDetector detector = new AutoPauseDetector();
+        for (int second = 0; second < 10; second++) {
+            fix(detector, second, 0, Double.NaN, Double.NaN);
+        }
+        assertTrue(detector.isPaused());
+
+        fix(detector, 10, 5, Double.NaN, Double.NaN);
+        assertTrue(detector.isPaused());
+        fix(detector, 11, 12, Double.NaN, Double.NaN);
+        assertFalse(detector.isPaused());
+    }
+
+    @Test
+    public void sustainedReliableSpeed_resumes() {
+        AutoPauseDetector detector = new AutoPauseDetector();
+        for (int second = 0; second < 10; second++) {
+            fix(detector, second, 0, 0.1, 0.5);
+        }
+        assertTrue(detector.isPaused());
+
+        // Unreliable speed is ignored
+        fix(detector, 10, 1, 3.0, 3.0);
+        fix(detector, 11, 1, 3.0, 3.0);
+        fix(detector, 12, 1, 3.0, 3.0);
+        assertTrue(detector.isPaused());
+
+        fix(detector, 13, 1, 3.0, 0.5);
+        fix(detector, 14, 2, 3.0, 0.5);
+        assertTrue(detector.isPaused());
+        fix(detector, 15, 3, 3.0, 0.5);
+        assertFalse(detector.isPaused());
+    }
+
+    @Test
+    public void movingTime_ignoresOldFixesAndExtendsWhileMoving() {
+        AutoPauseDetector detector = new AutoPauseDetector();
+        fix(detector, 0, 0, 3.0, 0.5);
+        fix(detector, 10, 30, 3.0, 0.5);
+        fix(detector, 5, 15, 3.0, 0.5);
+
+        assertEquals(10000, detector.getMovingTime());
+        assertEquals(12000, detector.getMovingTime(START_TIME + 12000));
+
+        detector.reset();
+        assertEquals(0, detector.getMovingTime());
+        assertFalse(detector.isPaused());
+    }
+}
@@ -0,0 +1,115 @@
+package com.ellep.runningcompanion;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BestEffortFinderTest {
+    private static final long START_TIME = 1760000000000L;
+    private static final double METERS_PER_DEGREE = 111195.0;
+
+    // One point per second heading north, at the speed given for each second
+    private static List<TrackPoint> track(double[] speeds) {
+        List<TrackPoint> track = new ArrayList<>();
+        double north = 0;
+        track.add(new TrackPoint(START_TIME, -22.9, -43.2, Double.NaN));
+        for (int second = 0; second < speeds.length; second++) {
+            north += speeds[second];
+            track.add(new TrackPoint(START_TIME + (second + 1) * 1000L, -22.9 + north / METERS_PER_DEGREE, -43.2, Double.NaN));
+        }
+        return track;
+    }
+
+    private static double[] constant(int seconds, double speed) {
+        double[] speeds = new double[seconds];
+        Arrays.fill(speeds, speed);
+        return speeds;
+    }
+
+    // Scans every start on a 1 m grid with both ends interpolated
+    private static double bruteForce(List<TrackPoint> track, double distance) {
+        int count = track.size();
+        double[] distances = new double[count];
+        for (int i = 1; i < count; i++) {
+            TrackPoint a = track.get(i - 1);
+            TrackPoint b = track.get(i);
+            distances[i] = distances[i - 1] + Utils.distanceMeters(a.getLatitude(), a.getLongitude(), b.getLatitude(), b.getLongitude());
+        }
+
+        double best = Double.POSITIVE_INFINITY;
+        for (double start = 0; start + distance <= distances[count - 1]; start += 1) {
+            best = Math.min(best, timeAt(track, distances, start + distance) - timeAt(track, distances, start));
+        }
+        return best / 1000.0;
+    }
+
+    private static double timeAt(List<TrackPoint> track, double[] distances, double distance) {
+        int i = 0;
+        while (i + 2 < distances.length && distances[i + 1] < distance) {
+            i++;
+        }
+        double fraction = (distance - distances[i]) / (distances[i + 1] - distances[i]);
+        return track.get(i).getTime() + fraction * (track.get(i + 1).getTime() - track.get(i).getTime());
+    }
+
+    @Test
+    public void constantSpeed_takesDistanceOverSpeed() {
+        BestEffort effort = new BestEffortFinder(track(constant(1200, 3.0))).find(1000);
+
+        assertNotNull(effort);
+        assertEquals(1000, effort.getDistance(), 0);
+        // The track is laid out on a sphere but measured on the ellipsoid
+        assertEquals(1000 / 3.0, effort.getDuration(), 1000 / 3.0 * 0.01);
+    }
+
+    @Test
+    public void fastStretch_isFound() {
+        double[] speeds = new double[900];
+        for (int second = 0; second < speeds.length; second++) {
+            speeds[second] = second >= 300 && second < 600 ? 5.0 : 3.0;
+        }
+        List<TrackPoint> track = track(speeds);
+        BestEffort effort = new BestEffortFinder(track).find(1000);
+
+        assertEquals(200, effort.getDuration(), 200 * 0.01);
+        long startSecond = (effort.getStartTime() - START_TIME) / 1000;
+        assertTrue("started at " + startSecond + " s", startSecond >= 300 && startSecond <= 400);
+    }
+
+    @Test
+    public void interpolatedEnds_matchBruteForce() {
+        Random random = new Random(3);
+        double[] speeds = new double[1500];
+        for (int second = 0; second < speeds.length; second++) {
+            speeds[second] = 2.0 + random.nextDouble() * 3.0;
+        }
+        List<TrackPoint> track = track(speeds);
+        BestEffortFinder finder = new BestEffortFinder(track);
+
+        for (double distance : new double[]{400, 1000, 2500}) {
+            double expected = bruteForce(track, distance);
+            double actual = finder.find(distance).getDuration();
+            // Never slower than any sampled start, and the grid is 1 m apart
+            assertTrue(distance + " m: " + actual + " > " + expected, actual <= expected + 1e-6);
+            assertEquals(expected, actual, 0.5);
+        }
+    }
+
+    @Test
+    public void shortTrack_hasNoEffort() {
+        BestEffortFinder finder = new BestEffortFinder(track(constant(300, 3.0)));
+
+        assertNull(finder.find(1000));
+        assertNull(new BestEffortFinder(new ArrayList<>()).find(1000));
+
+        List<BestEffort> efforts = new BestEffortFinder(track(constant(2000, 3.0))).findAll(BestEffortFinder.STANDARD_DISTANCES);
+        assertEquals(2, efforts.size());
+        assertEquals(1000, efforts.get(0).getDistance(), 0);
+        assertEquals(5000, efforts.get(1).getDistance(), 0);
+    }
+}
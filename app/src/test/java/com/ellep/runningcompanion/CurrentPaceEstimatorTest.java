@@ -0,0 +1,105 @@
+package com.ellep.runningcompanion;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CurrentPaceEstimatorTest {
+    private static final long START_TIME = 1760000000000L;
+
+    // Adds one sample per interval at a constant speed, returns the last sample time
+    private static long run(CurrentPaceEstimator estimator, long from, int seconds, long intervalMs, double metersPerSecond) {
+        long time = from;
+        for (long elapsed = intervalMs; elapsed <= seconds * 1000L; elapsed += intervalMs) {
+            time = from + elapsed;
+            estimator.addSample(time, metersPerSecond * intervalMs / 1000.0);
+        }
+        return time;
+    }
+
+    private static double paceOf(double metersPerSecond) {
+        return 1000.0 / metersPerSecond / 60.0;
+    }
+
+    @Test
+    public void constantSpeed_givesItsPace() {
+        CurrentPaceEstimator estimator = new CurrentPaceEstimator(120, 60);
+        long last = run(estimator, START_TIME, 300, 1000, 3.0);
+
+        assertEquals(paceOf(3.0), estimator.getPace(last), 1e-9);
+        assertEquals(60000, estimator.getWindowTime());
+        assertEquals(180, estimator.getWindowDistance(), 1e-9);
+    }
+
+    @Test
+    public void oldSamples_leaveTheWindow() {
+        CurrentPaceEstimator estimator = new CurrentPaceEstimator(120, 30);
+        long last = run(estimator, START_TIME, 120, 1000, 2.0);
+        last = run(estimator, last, 30, 1000, 4.0);
+
+        assertEquals(paceOf(4.0), estimator.getPace(last), 1e-9);
+    }
+
+    @Test
+    public void windowChange_reusesRetainedSamples() {
+        CurrentPaceEstimator estimator = new CurrentPaceEstimator(120, 60);
+        long last = run(estimator, START_TIME, 100, 1000, 2.0);
+        last = run(estimator, last, 20, 1000, 4.0);
+
+        // Only the last 10 s, all at 4 m/s
+        estimator.setWindowSeconds(10);
+        assertEquals(paceOf(4.0), estimator.getPace(last), 1e-9);
+
+        // Back to 60 s, which still holds 40 s at 2 m/s and 20 s at 4 m/s
+        estimator.setWindowSeconds(60);
+        assertEquals(60000, estimator.getWindowTime());
+        assertEquals(40 * 2.0 + 20 * 4.0, estimator.getWindowDistance(), 1e-9);
+    }
+
+    @Test
+    public void windowIsCappedAtTheRetainedMaximum() {
+        CurrentPaceEstimator estimator = new CurrentPaceEstimator(30, 30);
+        long last = run(estimator, START_TIME, 120, 1000, 3.0);
+
+        estimator.setWindowSeconds(120);
+        assertEquals(30, estimator.getWindowSeconds());
+        assertEquals(30000, estimator.getWindowTime());
+        assertEquals(paceOf(3.0), estimator.getPace(last), 1e-9);
+    }
+
+    @Test
+    public void manySamples_growTheBuffer() {
+        CurrentPaceEstimator estimator = new CurrentPaceEstimator(120, 120);
+        long last = run(estimator, START_TIME, 200, 100, 3.0);
+
+        assertEquals(120000, estimator.getWindowTime());
+        assertEquals(paceOf(3.0), estimator.getPace(last), 1e-9);
+    }
+
+    @Test
+    public void staleOrEmpty_hasNoPace() {
+        CurrentPaceEstimator estimator = new CurrentPaceEstimator(120, 30);
+        assertTrue(Double.isInfinite(estimator.getPace(START_TIME)));
+
+        long last = run(estimator, START_TIME, 60, 1000, 3.0);
+        assertTrue(Double.isInfinite(estimator.getPace(last + 31000)));
+
+        estimator.reset();
+        assertTrue(Double.isInfinite(estimator.getPace(last)));
+        assertEquals(0, estimator.getWindowDistance(), 0);
+    }
+
+    @Test
+    public void smoothing_followsTheRawPace() {
+        CurrentPaceEstimator estimator = new CurrentPaceEstimator(120, 10);
+        estimator.setSmoothingFactor(0.3);
+        long last = run(estimator, START_TIME, 60, 1000, 2.0);
+        last = run(estimator, last, 5, 1000, 4.0);
+
+        // Lags behind the raw pace after the speed change but converges
+        double lagging = estimator.getPace(last);
+        assertTrue(lagging > paceOf(2.0) * 0.5 && lagging < paceOf(2.0));
+        last = run(estimator, last, 60, 1000, 4.0);
+        assertEquals(paceOf(4.0), estimator.getPace(last), 1e-6);
+    }
+}
@@ -0,0 +1,141 @@
+package com.ellep.runningcompanion;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DeadReckoningTest {
+    private static final long START_TIME = 1760000000000L;
+    private static final double METERS_PER_DEGREE = 111195.0;
+    private static final int SECONDS = 300;
+    private static final int GAP_START = 120;
+    private static final int GAP_END = 180;
+    private static final double SPEED = 3.0;
+    private static final long MS_PER_STEP = 400;
+
+    private static byte[] fixLog;
+    private static byte[] stepLog;
+
+    // 3 m/s north, except for the gap where the runner goes 90 m east and
+    // back with only poor fixes, so the straight line across it is ~0 m
+    private static double[] position(double second) {
+        if (second < GAP_START) {
+            return new double[]{second * SPEED, 0};
+        }
+        if (second < GAP_END) {
+            double half = (GAP_END - GAP_START) / 2.0;
+            double east = second - GAP_START < half ? second - GAP_START : GAP_END - second;
+            return new double[]{GAP_START * SPEED, east * SPEED};
+        }
+        return new double[]{(second - (GAP_END - GAP_START)) * SPEED, 0};
+    }
+
+    private static void record() throws IOException {
+        if (fixLog != null) {
+            return;
+        }
+
+        Random random = new Random(5);
+        ByteArrayOutputStream fixBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream stepBytes = new ByteArrayOutputStream();
+        try (FixLogWriter fixes = new FixLogWriter(fixBytes); StepLogWriter steps = new StepLogWriter(stepBytes)) {
+            for (int second = 0; second < SECONDS; second++) {
+                boolean inGap = second >= GAP_START && second < GAP_END;
+                double[] position = position(second);
+                double noise = inGap ? 0 : 0.3;
+                double latitude = -22.9 + (position[0] + random.nextGaussian() * noise) / METERS_PER_DEGREE;
+                double longitude = -43.2 + (position[1] + random.nextGaussian() * noise) / METERS_PER_DEGREE;
+                fixes.write(new RunnerLocationReport("gps", START_TIME + second * 1000L, latitude, longitude, 700, inGap ? 20f : 3f, 4f, (float) SPEED, 0.5f));
+            }
+            for (long time = MS_PER_STEP; time < SECONDS * 1000L; time += MS_PER_STEP) {
+                steps.write(START_TIME + time);
+            }
+        }
+        fixLog = fixBytes.toByteArray();
+        stepLog = stepBytes.toByteArray();
+    }
+
+    // Replays both logs merged by time, returning the run distance in meters
+    // after every event
+    private static List<Double> replay(RunnerLocationManager manager, ReplayClock clock) throws IOException {
+        List<Double> distances = new ArrayList<>();
+        try (FixLogReader fixes = new FixLogReader(new ByteArrayInputStream(fixLog));
+             StepLogReader steps = new StepLogReader(new ByteArrayInputStream(stepLog))) {
+            RunnerLocationReport fix = fixes.read();
+            long step = steps.read();
+            while (fix != null || step >= 0) {
+                if (fix != null && (step < 0 || fix.getTime() <= step)) {
+                    clock.setTime(fix.getTime());
+                    manager.addLocationReport(fix);
+                    fix = fixes.read();
+                } else {
+                    clock.setTime(step);
+                    manager.addStepReport(step);
+                    step = steps.read();
+                }
+                distances.add(manager.getRunDistance() * 1000.0);
+            }
+        }
+        return distances;
+    }
+
+    @Test
+    public void gap_isBridgedBySteps() throws IOException {
+        record();
+        ReplayClock clock = new ReplayClock();
+        RunnerLocationManager manager = new RunnerLocationManager(clock);
+        manager.startRun(START_TIME);
+        List<Double> distances = replay(manager, clock);
+
+        double expected = (SECONDS - 1) * SPEED;
+        double actual = distances.get(distances.size() - 1);
+        assertEquals(expected, actual, expected * 0.03);
+    }
+
+    @Test
+    public void pendingDistance_neverDropsAcrossTheGap() throws IOException {
+        record();
+        ReplayClock clock = new ReplayClock();
+        RunnerLocationManager manager = new RunnerLocationManager(clock);
+        manager.startRun(START_TIME);
+        List<Double> distances = replay(manager, clock);
+
+        // Merging the steps after the gap may only swap the step estimate for
+        // the gps distance of the same stretch, never lose what was walked
+        for (int i = 1; i < distances.size(); i++) {
+            assertTrue("dropped from " + distances.get(i - 1) + " to " + distances.get(i),
+                    distances.get(i) >= distances.get(i - 1) - 0.5);
+        }
+    }
+
+    @Test
+    public void pendingSteps_areCapped() {
+        ReplayClock clock = new ReplayClock();
+        RunnerLocationManager manager = new RunnerLocationManager(clock);
+        manager.startRun(START_TIME);
+        for (int second = 0; second <= 4; second++) {
+            clock.setTime(START_TIME + second * 1000L);
+            manager.addLocationReport(new RunnerLocationReport("gps", START_TIME + second * 1000L,
+                    -22.9 + second * SPEED / METERS_PER_DEGREE, -43.2, 700, 3f, 4f, (float) SPEED, 0.5f));
+        }
+        double before = manager.getRunDistance() * 1000.0;
+
+        // The gps is lost for good while the steps keep coming
+        long time = START_TIME + 4000;
+        for (int i = 0; i < 3000; i++) {
+            time += MS_PER_STEP;
+            manager.addStepReport(time);
+        }
+        clock.setTime(time);
+
+        // Only the latest steps are kept, at the uncalibrated 1 m stride
+        assertEquals(2000, manager.getRunDistance() * 1000.0 - before, 1e-6);
+    }
+}
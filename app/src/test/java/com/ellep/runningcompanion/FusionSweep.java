@@ -0,0 +1,339 @@
+package com.ellep.runningcompanion;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Offline tuning of the location fusion. Replays a corpus of fix logs
+// through RunnerLocationManager for every combination of time group,
+// horizontal and vertical accuracy cut-offs, weighting and current pace
+// window, and prints how far each combination lands from the reference
+// distances and ascents and what it costs.
+//
+// Usage: ./gradlew :app:fusionSweep -Pcorpus=<corpus dir>, where the dir
+// holds the .fix logs and a references.csv with one "file,distance in
+// meters[,ascent in meters]" line per log.
+public class FusionSweep {
+    private static final int[] TIME_GROUPS_MS = {1000, 2500, 5000};
+    private static final double[] MAX_ACCURACIES = {3, 5, 10, 20};
+    private static final double[] MAX_VERTICAL_ACCURACIES = {3, 5, 10};
+    private static final boolean[] WEIGHTS_SQUARED = {false, true};
+    private static final int[] SPEED_BUFFERS = {15, 30, 60};
+
+    private static final long MS_PER_PACE_SAMPLE = 10000;
+    private static final long MS_BEFORE_PACE_SAMPLES = 60000;
+    private static final double MAX_SAMPLED_PACE = 20;
+
+    public static class Parameters {
+        private final int timeGroupMs;
+        private final double maxAccuracy;
+        private final double maxVerticalAccuracy;
+        private final boolean weightSquared;
+        private final int speedBuffer;
+
+        public Parameters(int timeGroupMs, double maxAccuracy, double maxVerticalAccuracy, boolean weightSquared, int speedBuffer) {
+            this.timeGroupMs = timeGroupMs;
+            this.maxAccuracy = maxAccuracy;
+            this.maxVerticalAccuracy = maxVerticalAccuracy;
+            this.weightSquared = weightSquared;
+            this.speedBuffer = speedBuffer;
+        }
+
+        public int getTimeGroupMs() {
+            return timeGroupMs;
+        }
+
+        public double getMaxAccuracy() {
+            return maxAccuracy;
+        }
+
+        public double getMaxVerticalAccuracy() {
+            return maxVerticalAccuracy;
+        }
+
+        public boolean isWeightSquared() {
+            return weightSquared;
+        }
+
+        public int getSpeedBuffer() {
+            return speedBuffer;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "group=%dms acc<=%.0fm vacc<=%.0fm w%s buffer=%ds",
+                    timeGroupMs, maxAccuracy, maxVerticalAccuracy, weightSquared ? "^2" : "^1", speedBuffer);
+        }
+    }
+
+    public static class Recording {
+        private final String name;
+        private final byte[] fixLog;
+        private final double referenceMeters;
+        private final double referenceAscent;
+
+        public Recording(String name, byte[] fixLog, double referenceMeters) {
+            this(name, fixLog, referenceMeters, Double.NaN);
+        }
+
+        // NaN when the ascent of the recording isn't known
+        public Recording(String name, byte[] fixLog, double referenceMeters, double referenceAscent) {
+            this.name = name;
+            this.fixLog = fixLog;
+            this.referenceMeters = referenceMeters;
+            this.referenceAscent = referenceAscent;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public static class Result {
+        private final Parameters parameters;
+        private final double meanErrorPercent;
+        private final double maxErrorPercent;
+        private final double meanAscentError;
+        private final double paceJitterSeconds;
+        private final long cpuNanos;
+        private final int fixes;
+
+        public Result(Parameters parameters, double meanErrorPercent, double maxErrorPercent, double meanAscentError, double paceJitterSeconds, long cpuNanos, int fixes) {
+            this.parameters = parameters;
+            this.meanErrorPercent = meanErrorPercent;
+            this.maxErrorPercent = maxErrorPercent;
+            this.meanAscentError = meanAscentError;
+            this.paceJitterSeconds = paceJitterSeconds;
+            this.cpuNanos = cpuNanos;
+            this.fixes = fixes;
+        }
+
+        public Parameters getParameters() {
+            return parameters;
+        }
+
+        // Mean of the absolute distance error over the corpus
+        public double getMeanErrorPercent() {
+            return meanErrorPercent;
+        }
+
+        public double getMaxErrorPercent() {
+            return maxErrorPercent;
+        }
+
+        // Mean of the absolute ascent error in meters over the recordings with
+        // a reference ascent, NaN when none has one
+        public double getMeanAscentError() {
+            return meanAscentError;
+        }
+
+        // RMS of the change between consecutive current pace samples, in s/km
+        public double getPaceJitterSeconds() {
+            return paceJitterSeconds;
+        }
+
+        public long getCpuNanos() {
+            return cpuNanos;
+        }
+
+        public int getFixes() {
+            return fixes;
+        }
+    }
+
+    public static List<Parameters> defaultGrid() {
+        List<Parameters> grid = new ArrayList<>();
+        for (int timeGroupMs : TIME_GROUPS_MS) {
+            for (double maxAccuracy : MAX_ACCURACIES) {
+                for (double maxVerticalAccuracy : MAX_VERTICAL_ACCURACIES) {
+                    for (boolean weightSquared : WEIGHTS_SQUARED) {
+                        for (int speedBuffer : SPEED_BUFFERS) {
+                            grid.add(new Parameters(timeGroupMs, maxAccuracy, maxVerticalAccuracy, weightSquared, speedBuffer));
+                        }
+                    }
+                }
+            }
+        }
+        return grid;
+    }
+
+    // Each combination gets its own clock and manager, so they run on the
+    // common fork-join pool without sharing any state but the read-only corpus
+    public static List<Result> sweep(List<Recording> corpus, List<Parameters> grid, boolean parallel) {
+        Stream<Parameters> stream = parallel ? grid.parallelStream() : grid.stream();
+        return stream.map(parameters -> evaluate(corpus, parameters)).collect(Collectors.toList());
+    }
+
+    public static Result evaluate(List<Recording> corpus, Parameters parameters) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        boolean cpuTime = threads.isCurrentThreadCpuTimeSupported();
+        long start = cpuTime ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+
+        double errorSum = 0;
+        double maxError = 0;
+        double ascentErrorSum = 0;
+        int ascentCount = 0;
+        double jitterSum = 0;
+        int jitterCount = 0;
+        int fixes = 0;
+
+        for (Recording recording : corpus) {
+            ReplayClock clock = new ReplayClock();
+            RunnerLocationManager manager = new RunnerLocationManager(clock);
+            manager.setTimeGroupMs(parameters.getTimeGroupMs());
+            manager.setMaxAccuracy(parameters.getMaxAccuracy());
+            manager.setMaxVerticalAccuracy(parameters.getMaxVerticalAccuracy());
+            manager.setUseWeightSquared(parameters.isWeightSquared());
+            manager.setCurrentSpeedTimeBuffer(parameters.getSpeedBuffer());
+
+            PaceSampler sampler = new PaceSampler(manager);
+            LocationReplayer replayer = new LocationReplayer(LocationReplayer.AS_FAST_AS_POSSIBLE, clock);
+            try (FixLogReader reader = new FixLogReader(new ByteArrayInputStream(recording.fixLog))) {
+                fixes += replayer.replay(reader, sampler);
+            } catch (IOException error) {
+                throw new UncheckedIOException(recording.getName(), error);
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(error);
+            }
+
+            double error = Math.abs(manager.getRunDistance() * 1000.0 - recording.referenceMeters) / recording.referenceMeters * 100;
+            errorSum += error;
+            maxError = Math.max(maxError, error);
+            if (!Double.isNaN(recording.referenceAscent)) {
+                ascentErrorSum += Math.abs(manager.getAscent() - recording.referenceAscent);
+                ascentCount++;
+            }
+            jitterSum += sampler.squaredChangeSum;
+            jitterCount += sampler.changes;
+        }
+
+        long cost = (cpuTime ? threads.getCurrentThreadCpuTime() : System.nanoTime()) - start;
+        return new Result(parameters,
+                corpus.isEmpty() ? 0 : errorSum / corpus.size(),
+                maxError,
+                ascentCount > 0 ? ascentErrorSum / ascentCount : Double.NaN,
+                jitterCount > 0 ? Math.sqrt(jitterSum / jitterCount) : 0,
+                cost,
+                fixes);
+    }
+
+    // Starts the run at the first fix and samples the current pace the way
+    // the UI would, once the pace window had time to fill
+    private static class PaceSampler implements RunnerReportCallback {
+        private final RunnerLocationManager manager;
+
+        private long firstTime = -1;
+        private long nextSampleTime = 0;
+        private double lastPaceSeconds = Double.NaN;
+
+        private double squaredChangeSum = 0;
+        private int changes = 0;
+
+        private PaceSampler(RunnerLocationManager manager) {
+            this.manager = manager;
+        }
+
+        @Override
+        public void onReport(RunnerLocationReport report) {
+            if (firstTime < 0) {
+                firstTime = report.getTime();
+                nextSampleTime = firstTime + MS_BEFORE_PACE_SAMPLES;
+                manager.startRun(firstTime);
+            }
+            manager.addLocationReport(report);
+
+            if (report.getTime() < nextSampleTime) {
+                return;
+            }
+            nextSampleTime += MS_PER_PACE_SAMPLE;
+
+            // Pauses are left out, their pace is meaningless
+            double pace = manager.getCurrentSpeed();
+            if (manager.isPaused() || Double.isNaN(pace) || pace >= MAX_SAMPLED_PACE) {
+                lastPaceSeconds = Double.NaN;
+                return;
+            }
+
+            int minutes = (int) pace;
+            double paceSeconds = minutes * 60 + (pace - minutes) * 100;
+            if (!Double.isNaN(lastPaceSeconds)) {
+                double change = paceSeconds - lastPaceSeconds;
+                squaredChangeSum += change * change;
+                changes++;
+            }
+            lastPaceSeconds = paceSeconds;
+        }
+    }
+
+    public static List<Recording> loadCorpus(File directory) throws IOException {
+        List<Recording> corpus = new ArrayList<>();
+        try (BufferedReader references = new BufferedReader(new FileReader(new File(directory, "references.csv")))) {
+            String line;
+            while ((line = references.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] fields = line.split(",");
+                if (fields.length != 2 && fields.length != 3) {
+                    throw new IOException("Bad reference line: " + line);
+                }
+                String name = fields[0].trim();
+                double referenceMeters = Double.parseDouble(fields[1].trim());
+                double referenceAscent = fields.length == 3 ? Double.parseDouble(fields[2].trim()) : Double.NaN;
+                corpus.add(new Recording(name, Files.readAllBytes(new File(directory, name).toPath()), referenceMeters, referenceAscent));
+            }
+        }
+        return corpus;
+    }
+
+    public static String formatTable(List<Result> results) {
+        List<Result> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparingDouble(Result::getMeanErrorPercent));
+
+        StringBuilder table = new StringBuilder();
+        table.append(String.format(Locale.US, "%-52s %8s %8s %9s %10s %10s%n", "parameters", "mean %", "max %", "ascent m", "jitter s", "us/fix"));
+        for (Result result : sorted) {
+            table.append(String.format(Locale.US, "%-52s %8.2f %8.2f %9.1f %10.1f %10.2f%n",
+                    result.getParameters(),
+                    result.getMeanErrorPercent(),
+                    result.getMaxErrorPercent(),
+                    result.getMeanAscentError(),
+                    result.getPaceJitterSeconds(),
+                    result.getFixes() > 0 ? result.getCpuNanos() / 1000.0 / result.getFixes() : 0));
+        }
+        return table.toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: FusionSweep <corpus dir with .fix logs and references.csv>");
+            System.exit(2);
+        }
+
+        List<Recording> corpus = loadCorpus(new File(args[0]));
+        List<Parameters> grid = defaultGrid();
+
+        long start = System.nanoTime();
+        List<Result> results = sweep(corpus, grid, true);
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+
+        System.out.print(formatTable(results));
+        System.out.println(String.format(Locale.US, "%d recordings x %d combinations in %d ms on %d cores",
+                corpus.size(), grid.size(), elapsedMs, Runtime.getRuntime().availableProcessors()));
+    }
+}
@@ -0,0 +1,102 @@
+package com.ellep.runningcompanion;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FusionSweepTest {
+    private static final long START_TIME = 1760000000000L;
+    private static final double METERS_PER_DEGREE = 111195.0;
+
+    // A straight run north at the given speed with one gps fix per second,
+    // mostly ~3 m accurate with a share of poor fixes carrying their noise
+    private static FusionSweep.Recording recordRun(String name, long seed, int seconds, double metersPerSecond) throws IOException {
+        Random random = new Random(seed);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (FixLogWriter writer = new FixLogWriter(bytes)) {
+            for (int second = 0; second < seconds; second++) {
+                double north = second * metersPerSecond;
+                float accuracy = random.nextDouble() < 0.2 ? 12f : 3f;
+                double latitude = -22.9 + (north + random.nextGaussian() * accuracy * 0.5) / METERS_PER_DEGREE;
+                double longitude = -43.2 + random.nextGaussian() * accuracy * 0.5 / METERS_PER_DEGREE;
+                float speed = (float) Math.abs(metersPerSecond + random.nextGaussian() * 0.2);
+                writer.write(new RunnerLocationReport("gps", START_TIME + second * 1000L, latitude, longitude, 700, accuracy, 4f, speed, 0.5f));
+            }
+        }
+        return new FusionSweep.Recording(name, bytes.toByteArray(), (seconds - 1) * metersPerSecond);
+    }
+
+    // A steady 30 m climb over 10 minutes, with a share of fixes whose
+    // altitude is off by up to 20 m and says so in its vertical accuracy
+    private static FusionSweep.Recording recordClimb(long seed) throws IOException {
+        Random random = new Random(seed);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (FixLogWriter writer = new FixLogWriter(bytes)) {
+            for (int second = 0; second < 600; second++) {
+                boolean noisy = random.nextDouble() < 0.3;
+                double altitude = 700 + second * 0.05 + (noisy ? random.nextGaussian() * 10 : random.nextGaussian() * 0.5);
+                double latitude = -22.9 + second * 3.0 / METERS_PER_DEGREE;
+                writer.write(new RunnerLocationReport("gps", START_TIME + second * 1000L, latitude, -43.2, altitude, 3f, noisy ? 8f : 2f, 3f, 0.5f));
+            }
+        }
+        return new FusionSweep.Recording("climb", bytes.toByteArray(), 599 * 3.0, 599 * 0.05);
+    }
+
+    private static List<FusionSweep.Recording> corpus() throws IOException {
+        List<FusionSweep.Recording> corpus = new ArrayList<>();
+        corpus.add(recordRun("easy", 1, 600, 2.8));
+        corpus.add(recordRun("tempo", 2, 400, 4.0));
+        return corpus;
+    }
+
+    @Test
+    public void sweep_coversTheWholeGrid() throws Exception {
+        List<FusionSweep.Parameters> grid = FusionSweep.defaultGrid();
+        List<FusionSweep.Result> results = FusionSweep.sweep(corpus(), grid, true);
+
+        assertEquals(grid.size(), results.size());
+        for (int i = 0; i < grid.size(); i++) {
+            assertSame(grid.get(i), results.get(i).getParameters());
+            assertEquals(1000, results.get(i).getFixes());
+        }
+    }
+
+    @Test
+    public void sweep_parallelMatchesSequential() throws Exception {
+        List<FusionSweep.Recording> corpus = corpus();
+        List<FusionSweep.Parameters> grid = FusionSweep.defaultGrid();
+        List<FusionSweep.Result> parallel = FusionSweep.sweep(corpus, grid, true);
+        List<FusionSweep.Result> sequential = FusionSweep.sweep(corpus, grid, false);
+
+        for (int i = 0; i < grid.size(); i++) {
+            assertEquals(sequential.get(i).getMeanErrorPercent(), parallel.get(i).getMeanErrorPercent(), 0);
+            assertEquals(sequential.get(i).getPaceJitterSeconds(), parallel.get(i).getPaceJitterSeconds(), 0);
+        }
+    }
+
+    @Test
+    public void evaluate_defaultsStayCloseToReference() throws Exception {
+        FusionSweep.Result result = FusionSweep.evaluate(corpus(), new FusionSweep.Parameters(2500, 5, 5, false, 60));
+
+        assertTrue("mean error " + result.getMeanErrorPercent() + "%", result.getMeanErrorPercent() < 3);
+        assertTrue(result.getPaceJitterSeconds() > 0);
+    }
+
+    @Test
+    public void evaluate_verticalCutOffKeepsNoisyAltitudesOut() throws Exception {
+        List<FusionSweep.Recording> corpus = new ArrayList<>();
+        corpus.add(recordClimb(3));
+        FusionSweep.Result strict = FusionSweep.evaluate(corpus, new FusionSweep.Parameters(2500, 5, 5, false, 60));
+        FusionSweep.Result loose = FusionSweep.evaluate(corpus, new FusionSweep.Parameters(2500, 5, 10, false, 60));
+
+        assertTrue(strict.getMeanAscentError() + " m vs " + loose.getMeanAscentError() + " m",
+                strict.getMeanAscentError() < loose.getMeanAscentError());
+        assertTrue(Double.isNaN(FusionSweep.evaluate(corpus(), new FusionSweep.Parameters(2500, 5, 5, false, 60)).getMeanAscentError()));
+    }
+}
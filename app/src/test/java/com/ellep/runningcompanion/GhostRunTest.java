@@ -0,0 +1,179 @@
+package com.ellep.runningcompanion;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GhostRunTest {
+    private static final long START_TIME = 1760000000000L;
+    private static final double METERS_PER_DEGREE = 111195.0;
+
+    // One point per second heading north between 2 and 4 m/s
+    private static List<TrackPoint> track(int seconds) {
+        Random random = new Random(11);
+        List<TrackPoint> track = new ArrayList<>();
+        double north = 0;
+        for (int second = 0; second <= seconds; second++) {
+            track.add(new TrackPoint(START_TIME + second * 1000L, -22.9 + north / METERS_PER_DEGREE, -43.2, Double.NaN));
+            north += 2.0 + random.nextDouble() * 2.0;
+        }
+        return track;
+    }
+
+    private static TrackInput input(List<TrackPoint> points) {
+        Iterator<TrackPoint> iterator = points.iterator();
+        return new TrackInput() {
+            @Override
+            public TrackPoint read() {
+                return iterator.hasNext() ? iterator.next() : null;
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    private static double[] cumulativeDistances(List<TrackPoint> track) {
+        double[] distances = new double[track.size()];
+        for (int i = 1; i < track.size(); i++) {
+            TrackPoint a = track.get(i - 1);
+            TrackPoint b = track.get(i);
+            distances[i] = distances[i - 1] + Utils.distanceMeters(a.getLatitude(), a.getLongitude(), b.getLatitude(), b.getLongitude());
+        }
+        return distances;
+    }
+
+    // Linear scans over the whole track, interpolating like the ghost
+    private static double distanceAt(List<TrackPoint> track, double[] distances, long elapsedMs) {
+        for (int i = 0; i + 1 < track.size(); i++) {
+            long from = track.get(i).getTime() - START_TIME;
+            long to = track.get(i + 1).getTime() - START_TIME;
+            if (elapsedMs >= from && elapsedMs < to) {
+                return distances[i] + (double) (elapsedMs - from) / (to - from) * (distances[i + 1] - distances[i]);
+            }
+        }
+        return distances[distances.length - 1];
+    }
+
+    private static long timeAt(List<TrackPoint> track, double[] distances, double distance) {
+        for (int j = 1; j < track.size(); j++) {
+            if (distances[j] >= distance) {
+                long from = track.get(j - 1).getTime() - START_TIME;
+                long to = track.get(j).getTime() - START_TIME;
+                double fraction = (distance - distances[j - 1]) / (distances[j] - distances[j - 1]);
+                return from + Math.round(fraction * (to - from));
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void forwardLookups_matchLinearScan() throws IOException {
+        List<TrackPoint> track = track(600);
+        double[] distances = cumulativeDistances(track);
+        GhostRun ghost = new GhostRun(START_TIME, input(track));
+
+        assertEquals(600000, ghost.getDuration());
+        assertEquals(distances[distances.length - 1], ghost.getDistance(), 1e-6);
+        for (long elapsed = 0; elapsed <= 600000; elapsed += 700) {
+            assertEquals(distanceAt(track, distances, elapsed), ghost.getDistanceAt(elapsed), 1e-6);
+        }
+        for (double distance = 1; distance < ghost.getDistance(); distance += 7.3) {
+            assertEquals(timeAt(track, distances, distance), ghost.getTimeAt(distance));
+        }
+    }
+
+    @Test
+    public void backwardLookups_fallBackToSearch() throws IOException {
+        List<TrackPoint> track = track(600);
+        double[] distances = cumulativeDistances(track);
+        GhostRun ghost = new GhostRun(START_TIME, input(track));
+
+        // Moves both cursors to the end first, then jumps around
+        ghost.getDistanceAt(599500);
+        ghost.getTimeAt(ghost.getDistance() - 1);
+        Random random = new Random(4);
+        for (int i = 0; i < 500; i++) {
+            long elapsed = (long) (random.nextDouble() * 600000);
+            assertEquals(distanceAt(track, distances, elapsed), ghost.getDistanceAt(elapsed), 1e-6);
+
+            double distance = 0.5 + random.nextDouble() * (ghost.getDistance() - 1);
+            assertEquals(timeAt(track, distances, distance), ghost.getTimeAt(distance));
+        }
+    }
+
+    @Test
+    public void outsideTheTrack_isClamped() throws IOException {
+        GhostRun ghost = new GhostRun(START_TIME, input(track(60)));
+
+        assertEquals(0, ghost.getDistanceAt(-1000), 0);
+        assertEquals(ghost.getDistance(), ghost.getDistanceAt(3600000), 0);
+        assertEquals(0, ghost.getTimeAt(0));
+        assertEquals(-1, ghost.getTimeAt(ghost.getDistance() + 1));
+    }
+
+    @Test
+    public void pointsBeforeTheStartOrOutOfOrder_areSkipped() throws IOException {
+        List<TrackPoint> points = new ArrayList<>();
+        points.add(new TrackPoint(START_TIME - 5000, -22.8, -43.2, Double.NaN));
+        points.addAll(track(10));
+        points.add(5, new TrackPoint(START_TIME + 2000, -22.7, -43.2, Double.NaN));
+        GhostRun ghost = new GhostRun(START_TIME, input(points));
+
+        List<TrackPoint> clean = track(10);
+        assertEquals(cumulativeDistances(clean)[10], ghost.getDistance(), 1e-6);
+        assertEquals(10000, ghost.getDuration());
+
+        GhostRun empty = new GhostRun(START_TIME, input(new ArrayList<>()));
+        assertTrue(empty.isEmpty());
+        assertEquals(0, empty.getDistanceAt(1000), 0);
+        assertEquals(-1, empty.getTimeAt(10));
+    }
+
+    @Test
+    public void recordedDistances_areUsedAsIs() throws IOException {
+        // The recorded distance disagrees with the positions on purpose
+        List<TrackPoint> points = new ArrayList<>();
+        for (TrackPoint point : track(300)) {
+            long second = (point.getTime() - START_TIME) / 1000;
+            points.add(new TrackPoint(point.getTime(), point.getLatitude(), point.getLongitude(), Double.NaN, second * 2.5));
+        }
+        GhostRun ghost = new GhostRun(START_TIME, input(points));
+
+        assertEquals(750, ghost.getDistance(), 0);
+        for (long second = 0; second <= 300; second += 7) {
+            assertEquals(second * 2.5, ghost.getDistanceAt(second * 1000), 1e-9);
+        }
+    }
+
+    @Test
+    public void recordedRun_pausesWhereTheLiveRunDid() throws IOException {
+        ReplayClock clock = new ReplayClock();
+        RunnerLocationManager manager = new RunnerLocationManager(clock);
+        manager.startRun(START_TIME);
+
+        // Runs for 3 min, stands at a crossing for 1 min and runs again
+        Random random = new Random(3);
+        double north = 0;
+        for (int second = 0; second < 420; second++) {
+            boolean standing = second >= 180 && second < 240;
+            double latitude = -22.9 + (north + random.nextGaussian() * 0.5) / METERS_PER_DEGREE;
+            clock.setTime(START_TIME + second * 1000L);
+            manager.addLocationReport(new RunnerLocationReport("gps", START_TIME + second * 1000L, latitude, -43.2, 700, 3f, 4f, standing ? 0f : 3f, 0.5f));
+            north += standing ? 0 : 3;
+        }
+
+        List<TrackPoint> track = manager.getRunTrack();
+        GhostRun ghost = new GhostRun(START_TIME, input(track));
+        assertEquals(manager.getRunDistance() * 1000.0, ghost.getDistance(), 1e-6);
+        for (TrackPoint point : track) {
+            assertEquals(point.getDistance(), ghost.getDistanceAt(point.getTime() - START_TIME), 1e-6);
+        }
+    }
+}
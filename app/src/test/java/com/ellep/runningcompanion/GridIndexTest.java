@@ -0,0 +1,73 @@
+package com.ellep.runningcompanion;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class GridIndexTest {
+    private static final double METERS_PER_DEGREE = 111195.0;
+
+    @Test
+    public void collectNear_findsEverythingWithinTheQueryRadius() {
+        assertFindsEverythingNear(-60, 60, 9);
+    }
+
+    @Test
+    public void collectNear_findsEverythingNearThePoles() {
+        // Past about 63 degrees a cell is narrower than the query radius
+        assertFindsEverythingNear(60, 89, 10);
+        assertFindsEverythingNear(-89, -60, 11);
+    }
+
+    private static void assertFindsEverythingNear(double fromLatitude, double toLatitude, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < 1000; i++) {
+            double latitude = fromLatitude + random.nextDouble() * (toLatitude - fromLatitude);
+            double longitude = -180 + random.nextDouble() * 360;
+            double bearing = random.nextDouble() * 2 * Math.PI;
+            double meters = random.nextDouble() * GridIndex.MAX_QUERY_RADIUS;
+            double otherLatitude = latitude + meters * Math.cos(bearing) / METERS_PER_DEGREE;
+            double otherLongitude = longitude + meters * Math.sin(bearing) / (METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude)));
+
+            GridIndex<Integer> index = new GridIndex<>();
+            index.add(otherLatitude, otherLongitude, i);
+            Set<Integer> near = new HashSet<>();
+            index.collectNear(latitude, longitude, near);
+            assertTrue("missed a value " + meters + " m away at " + latitude + ", " + longitude, near.contains(i));
+        }
+    }
+
+    @Test
+    public void collectNear_skipsFarCells() {
+        GridIndex<String> index = new GridIndex<>();
+        index.add(-22.9, -43.2, "here");
+        index.add(-22.9 + 3 * GridIndex.CELL_DEGREES, -43.2, "north");
+        index.add(-22.9, -43.2 - 3 * GridIndex.CELL_DEGREES, "west");
+
+        Set<String> near = new HashSet<>();
+        index.collectNear(-22.9, -43.2, near);
+        assertEquals(1, near.size());
+        assertTrue(near.contains("here"));
+    }
+
+    @Test
+    public void cellKeys_differAcrossSignsAndNeighbours() {
+        Set<Long> keys = new HashSet<>();
+        for (double latitude : new double[]{-0.001, 0.001, -22.9, 22.9}) {
+            for (double longitude : new double[]{-0.001, 0.001, -43.2, 43.2, -179.999, 179.999}) {
+                assertTrue(keys.add(GridIndex.getCellKey(latitude, longitude)));
+            }
+        }
+
+        GridIndex<Long> index = new GridIndex<>();
+        index.add(-22.9, -43.2, 1L);
+        index.add(-22.9, -43.2, 1L);
+        index.add(-22.9, -43.2, 2L);
+        assertEquals(1, index.getCells().size());
+        assertEquals(2, index.getCells().values().iterator().next().size());
+    }
+}
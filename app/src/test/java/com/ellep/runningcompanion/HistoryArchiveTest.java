@@ -0,0 +1,196 @@
+package com.ellep.runningcompanion;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class HistoryArchiveTest {
+    private static final long START_TIME = 1760000000000L;
+
+    private static List<TrackPoint> track(long when, int count) {
+        List<TrackPoint> track = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            track.add(new TrackPoint(when + i * 1000L, -22.9 + i * 1e-5, -43.2 - i * 1e-5, i % 3 == 0 ? Double.NaN : 700 + i, i * 3.0));
+        }
+        return track;
+    }
+
+    private static String summary(long when) {
+        return "{\"when\":" + when + "}";
+    }
+
+    // Three runs, the middle one without a track
+    private static byte[] archive() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (HistoryArchiveWriter writer = new HistoryArchiveWriter(bytes)) {
+            for (int run = 0; run < 3; run++) {
+                long when = START_TIME + run * 86400000L;
+                List<TrackPoint> track = track(when, run == 1 ? 0 : 100 + run);
+                writer.writeRun(summary(when), track.size());
+                for (TrackPoint point : track) {
+                    writer.writePoint(point);
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void roundTrip_keepsSummariesAndTracks() throws IOException {
+        try (HistoryArchiveReader reader = new HistoryArchiveReader(new ByteArrayInputStream(archive()))) {
+            for (int run = 0; run < 3; run++) {
+                assertTrue(reader.nextRun());
+                long when = START_TIME + run * 86400000L;
+                assertEquals(summary(when), reader.getSummary());
+
+                List<TrackPoint> expected = track(when, run == 1 ? 0 : 100 + run);
+                assertEquals(expected.size(), reader.getPointCount());
+                for (TrackPoint point : expected) {
+                    TrackPoint read = reader.readPoint();
+                    assertEquals(point.getTime(), read.getTime());
+                    assertEquals(point.getLatitude(), read.getLatitude(), 0);
+                    assertEquals(point.getLongitude(), read.getLongitude(), 0);
+                    assertEquals(point.hasAltitude(), read.hasAltitude());
+                    if (point.hasAltitude()) {
+                        assertEquals(point.getAltitude(), read.getAltitude(), 0);
+                    }
+                    assertEquals(point.getDistance(), read.getDistance(), 0);
+                }
+                assertNull(reader.readPoint());
+            }
+            assertFalse(reader.nextRun());
+        }
+    }
+
+    @Test
+    public void knownRuns_areSkippedWithoutReadingTheirPoints() throws IOException {
+        // Like a restore where the first run is already in the history
+        Set<Long> knownRuns = new HashSet<>(Arrays.asList(START_TIME));
+        List<Long> restored = new ArrayList<>();
+        try (HistoryArchiveReader reader = new HistoryArchiveReader(new ByteArrayInputStream(archive()))) {
+            while (reader.nextRun()) {
+                long when = Long.parseLong(reader.getSummary().replaceAll("\\D", ""));
+                if (!knownRuns.add(when)) {
+                    continue;
+                }
+
+                // Reads only part of the track, the rest is skipped as well
+                if (reader.getPointCount() > 0) {
+                    assertEquals(when, reader.readPoint().getTime());
+                }
+                restored.add(when);
+            }
+        }
+
+        assertEquals(Arrays.asList(START_TIME + 86400000L, START_TIME + 2 * 86400000L), restored);
+    }
+
+    @Test
+    public void truncatedArchive_throws() throws IOException {
+        byte[] bytes = archive();
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 10 * TrackWriter.POINT_SIZE);
+
+        try (HistoryArchiveReader reader = new HistoryArchiveReader(new ByteArrayInputStream(truncated))) {
+            assertTrue(reader.nextRun());
+            assertTrue(reader.nextRun());
+            assertTrue(reader.nextRun());
+            reader.nextRun();
+            fail("read past the end of a truncated archive");
+        } catch (EOFException expected) {
+            // The last run is missing points and the end flag
+        }
+    }
+
+    @Test
+    public void missingPoints_failOnClose() throws IOException {
+        HistoryArchiveWriter writer = new HistoryArchiveWriter(new ByteArrayOutputStream());
+        writer.writeRun(summary(START_TIME), 2);
+        writer.writePoint(track(START_TIME, 1).get(0));
+
+        try {
+            writer.close();
+            fail("closed an archive with a run missing points");
+        } catch (IOException expected) {
+            assertEquals("1 points missing from the run", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void pointSize_matchesTrackFiles() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TrackWriter writer = new TrackWriter(bytes)) {
+            for (TrackPoint point : track(START_TIME, 7)) {
+                writer.write(point);
+            }
+        }
+        assertEquals(TrackWriter.HEADER_SIZE + 7 * TrackWriter.POINT_SIZE, bytes.size());
+    }
+
+    @Test
+    public void versionOneArchive_isReadWithoutDistances() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(HistoryArchiveWriter.MAGIC);
+            output.writeInt(1);
+            for (int run = 0; run < 2; run++) {
+                output.writeBoolean(true);
+                output.writeUTF(summary(START_TIME + run));
+                output.writeInt(3);
+                for (int i = 0; i < 3; i++) {
+                    output.writeLong(START_TIME + run + i * 1000L);
+                    output.writeDouble(-22.9);
+                    output.writeDouble(-43.2);
+                    output.writeDouble(700 + i);
+                }
+            }
+            output.writeBoolean(false);
+        }
+
+        try (HistoryArchiveReader reader = new HistoryArchiveReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+            // The first run's points are skipped at the old record size
+            assertTrue(reader.nextRun());
+            assertTrue(reader.nextRun());
+            assertEquals(summary(START_TIME + 1), reader.getSummary());
+            TrackPoint point = reader.readPoint();
+            assertEquals(START_TIME + 1, point.getTime());
+            assertEquals(700, point.getAltitude(), 0);
+            assertFalse(point.hasDistance());
+            assertFalse(reader.nextRun());
+        }
+    }
+
+    private static byte[] archiveWithCount(int pointCount) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(HistoryArchiveWriter.MAGIC);
+            output.writeInt(HistoryArchiveWriter.VERSION);
+            output.writeBoolean(true);
+            output.writeUTF(summary(START_TIME));
+            output.writeInt(pointCount);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void corruptPointCounts_areRejected() throws IOException {
+        for (int pointCount : new int[]{-1, Integer.MIN_VALUE, HistoryArchiveReader.MAX_POINT_COUNT + 1, Integer.MAX_VALUE}) {
+            try (HistoryArchiveReader reader = new HistoryArchiveReader(new ByteArrayInputStream(archiveWithCount(pointCount)))) {
+                reader.nextRun();
+                fail("accepted " + pointCount + " points");
+            } catch (IOException error) {
+                assertEquals("Invalid point count " + pointCount, error.getMessage());
+            }
+        }
+    }
+}
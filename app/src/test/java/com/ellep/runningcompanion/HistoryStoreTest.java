@@ -0,0 +1,188 @@
+package com.ellep.runningcompanion;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class HistoryStoreTest {
+    private static final long START_TIME = 1760000000000L;
+
+    private static class MemoryPreferences implements PreferenceStore {
+        private final Map<String, String> values = new HashMap<>();
+
+        @Override
+        public synchronized String getString(String key, String defaultValue) {
+            return values.containsKey(key) ? values.get(key) : defaultValue;
+        }
+
+        @Override
+        public synchronized boolean contains(String key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public synchronized void putString(String key, String value) {
+            values.put(key, value);
+        }
+
+        @Override
+        public synchronized void remove(String key) {
+            values.remove(key);
+        }
+    }
+
+    private static JSONObject run(long when, double distance, double best1k) throws Exception {
+        JSONObject run = new JSONObject();
+        run.put("when", when);
+        run.put("time", 1000);
+        run.put("distance", distance);
+        run.put("pace", 3.0);
+        run.put("altimetry", 10);
+        run.put("descent", 10);
+        JSONObject bests = new JSONObject();
+        bests.put(PersonalRecords.getKey(1000), best1k);
+        run.put("bests", bests);
+        return run;
+    }
+
+    private static List<Long> whens(JSONArray history) throws Exception {
+        List<Long> whens = new ArrayList<>();
+        for (int i = 0; i < history.length(); i++) {
+            whens.add(history.getJSONObject(i).getLong("when"));
+        }
+        return whens;
+    }
+
+    @Test
+    public void addRuns_updatesRecordsAndRollups() throws Exception {
+        HistoryStore store = new HistoryStore(new MemoryPreferences(), Runnable::run);
+        // Rollups are built from the history on its first read
+        assertTrue(store.readHistory().isEmpty());
+
+        store.addRuns(Collections.singletonList(run(START_TIME, 5.0, 300)));
+        store.addRuns(Collections.singletonList(run(START_TIME + 86400000L, 3.0, 290)));
+
+        assertEquals(2, store.getHistory().length());
+        assertEquals(290, store.getRecords().getRecordTime(1000), 0);
+        assertEquals(START_TIME + 86400000L, store.getRecords().getRecordWhen(1000));
+        assertEquals(8.0, store.getRollups().getBucket(HistoryRollups.YEAR, START_TIME).getDistance(), 1e-9);
+
+        List<HistoryItem> items = store.readHistory();
+        assertEquals(START_TIME + 86400000L, items.get(0).getWhen());
+        assertEquals(START_TIME, items.get(1).getWhen());
+    }
+
+    @Test
+    public void legacyAltimetry_isLeftOutOfTheAscent() throws Exception {
+        MemoryPreferences preferences = new MemoryPreferences();
+        // Stored before the descent was kept: 30 m up and down in total
+        JSONObject legacy = run(START_TIME, 5.0, 300);
+        legacy.put("altimetry", 30);
+        legacy.remove("descent");
+        JSONObject history = new JSONObject();
+        history.put("history", new JSONArray().put(legacy));
+        preferences.putString("history", history.toString());
+        // Rollups built back then, with the legacy altimetry as ascent
+        JSONObject bucket = new JSONObject();
+        bucket.put("count", 1);
+        bucket.put("distance", 5.0);
+        bucket.put("time", 1000);
+        bucket.put("ascent", 30);
+        JSONObject years = new JSONObject();
+        years.put(HistoryRollups.getKey(HistoryRollups.YEAR, START_TIME), bucket);
+        preferences.putString("rollups", new JSONObject().put(HistoryRollups.YEAR, years).toString());
+
+        HistoryStore store = new HistoryStore(preferences, Runnable::run);
+        List<HistoryItem> items = store.readHistory();
+        assertTrue(items.get(0).isLegacyAltimetry());
+        assertEquals(30, items.get(0).getAltimetry(), 0);
+
+        store.addRuns(Collections.singletonList(run(START_TIME + 86400000L, 3.0, 290)));
+        assertFalse(store.readHistory().get(0).isLegacyAltimetry());
+        RollupBucket year = store.getRollups().getBucket(HistoryRollups.YEAR, START_TIME);
+        assertEquals(2, year.getCount());
+        assertEquals(8.0, year.getDistance(), 1e-9);
+        assertEquals(10, year.getAscent(), 0);
+    }
+
+    @Test
+    public void runsStoredDuringARestore_areKeptInOrder() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        HistoryStore store = new HistoryStore(new MemoryPreferences(), executor);
+        CountDownLatch restoreStarted = new CountDownLatch(1);
+        CountDownLatch storesQueued = new CountDownLatch(1);
+
+        // A restore reads the history, takes its time over the archive and
+        // writes everything back at the end
+        store.execute(() -> {
+            try {
+                assertTrue(store.getKnownRuns().isEmpty());
+                restoreStarted.countDown();
+                storesQueued.await();
+                store.addRuns(Collections.singletonList(run(START_TIME, 5.0, 300)));
+            } catch (Exception error) {
+                throw new RuntimeException(error);
+            }
+        });
+
+        // Runs finished meanwhile, stored from another thread
+        assertTrue(restoreStarted.await(10, TimeUnit.SECONDS));
+        Thread ingest = new Thread(() -> {
+            for (int i = 1; i <= 20; i++) {
+                long when = START_TIME + i * 86400000L;
+                store.execute(() -> {
+                    try {
+                        store.addRuns(Collections.singletonList(run(when, 4.0, 310)));
+                    } catch (Exception error) {
+                        throw new RuntimeException(error);
+                    }
+                });
+            }
+        });
+        ingest.start();
+        ingest.join();
+        storesQueued.countDown();
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        List<Long> whens = whens(store.getHistory());
+        assertEquals(21, whens.size());
+        for (int i = 0; i <= 20; i++) {
+            assertEquals(START_TIME + i * 86400000L, (long) whens.get(i));
+        }
+        assertEquals(300, store.getRecords().getRecordTime(1000), 0);
+    }
+
+    @Test
+    public void execute_onlyQueuesTheTask() throws Exception {
+        List<Runnable> queue = new ArrayList<>();
+        MemoryPreferences preferences = new MemoryPreferences();
+        HistoryStore store = new HistoryStore(preferences, queue::add);
+
+        store.execute(() -> {
+            try {
+                store.addRuns(Collections.singletonList(run(START_TIME, 5.0, 300)));
+            } catch (Exception error) {
+                throw new RuntimeException(error);
+            }
+        });
+
+        // The caller, the ingest thread, never touches the preferences
+        assertFalse(preferences.contains("history"));
+        queue.get(0).run();
+        assertEquals(1, store.getHistory().length());
+    }
+}
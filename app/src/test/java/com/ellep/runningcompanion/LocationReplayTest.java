@@ -0,0 +1,135 @@
+package com.ellep.runningcompanion;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LocationReplayTest {
+    private static final long START_TIME = 1760000000000L;
+    private static final double METERS_PER_DEGREE = 111195.0;
+
+    // 10 minutes at 3 m/s, a 1 minute stop and 5 more minutes at 3 m/s, with
+    // a gps and a fused fix every second, both with ~2 m of noise
+    private static byte[] recordSyntheticRun() throws IOException {
+        Random random = new Random(42);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (FixLogWriter writer = new FixLogWriter(bytes)) {
+            double north = 0;
+            for (int second = 0; second < 960; second++) {
+                boolean stopped = second >= 600 && second < 660;
+                if (!stopped) {
+                    north += 3.0;
+                }
+
+                for (String source : new String[]{"gps", "fused"}) {
+                    double latitude = -22.9 + (north + random.nextGaussian() * 2) / METERS_PER_DEGREE;
+                    double longitude = -43.2 + random.nextGaussian() * 2 / METERS_PER_DEGREE;
+                    float speed = (float) Math.abs((stopped ? 0.2 : 3.0) + random.nextGaussian() * 0.2);
+                    long time = START_TIME + second * 1000L + (source.equals("gps") ? 0 : 400);
+                    writer.write(new RunnerLocationReport(source, time, latitude, longitude, 700, 3.5f, 4f, speed, 0.5f));
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static RunnerLocationManager replay(byte[] fixLog, double speed, LocationReplayer[] replayerOut) throws Exception {
+        ReplayClock clock = new ReplayClock();
+        RunnerLocationManager manager = new RunnerLocationManager(clock);
+        manager.startRun(START_TIME);
+
+        LocationReplayer replayer = new LocationReplayer(speed, clock);
+        try (FixLogReader reader = new FixLogReader(new ByteArrayInputStream(fixLog))) {
+            replayer.replay(reader, manager::addLocationReport);
+        }
+
+        manager.publishSnapshot();
+        if (replayerOut != null) {
+            replayerOut[0] = replayer;
+        }
+        return manager;
+    }
+
+    @Test
+    public void replay_accumulatesExpectedDistanceAndMovingTime() throws Exception {
+        LocationReplayer[] replayer = new LocationReplayer[1];
+        RunnerLocationManager manager = replay(recordSyntheticRun(), LocationReplayer.AS_FAST_AS_POSSIBLE, replayer);
+
+        assertEquals(1920, replayer[0].getReplayedFixes());
+        assertEquals("distance (km)", 2.7, manager.getRunDistance(), 2.7 * 0.03);
+        assertEquals("moving time (s)", 900, manager.getMovingTime(), 20);
+        assertEquals(2, manager.getSplits().size());
+    }
+
+    @Test
+    public void replay_isDeterministic() throws Exception {
+        byte[] fixLog = recordSyntheticRun();
+        RunnerLocationManager first = replay(fixLog, LocationReplayer.AS_FAST_AS_POSSIBLE, null);
+        RunnerLocationManager second = replay(fixLog, LocationReplayer.AS_FAST_AS_POSSIBLE, null);
+
+        assertEquals(first.getRunDistance(), second.getRunDistance(), 0);
+        assertEquals(first.getMovingTime(), second.getMovingTime());
+        assertEquals(first.getRunTrack().size(), second.getRunTrack().size());
+    }
+
+    // Advances only when the replayer sleeps, and records when each fix is delivered
+    private static class FakeTimer implements ReplayTimer {
+        private long nanos = 0;
+        private int sleeps = 0;
+
+        @Override
+        public long nanoTime() {
+            return nanos;
+        }
+
+        @Override
+        public void sleep(long nanos) {
+            this.nanos += nanos;
+            sleeps++;
+        }
+    }
+
+    @Test
+    public void replay_respectsSpeedFactor() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (FixLogWriter writer = new FixLogWriter(bytes)) {
+            for (int second = 0; second <= 20; second++) {
+                writer.write(new RunnerLocationReport("gps", START_TIME + second * 1000L, -22.9, -43.2, 700, 3f, 3f, 0f, 0.5f));
+            }
+        }
+
+        FakeTimer timer = new FakeTimer();
+        List<Long> deliveredNanos = new ArrayList<>();
+        LocationReplayer replayer = new LocationReplayer(100, new ReplayClock(), timer);
+        try (FixLogReader reader = new FixLogReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+            replayer.replay(reader, report -> deliveredNanos.add(timer.nanoTime()));
+        }
+
+        // 20 s of fixes at 100x: one fix every 10 ms, 200 ms in total
+        assertEquals(21, deliveredNanos.size());
+        for (int i = 0; i < deliveredNanos.size(); i++) {
+            assertEquals(i * 10000000L, (long) deliveredNanos.get(i));
+        }
+        assertEquals(20, timer.sleeps);
+        assertEquals(21 / 0.2, replayer.getFixesPerSecond(), 1e-6);
+    }
+
+    @Test
+    public void replay_asFastAsPossibleNeverSleeps() throws Exception {
+        FakeTimer timer = new FakeTimer();
+        LocationReplayer replayer = new LocationReplayer(LocationReplayer.AS_FAST_AS_POSSIBLE, new ReplayClock(), timer);
+        try (FixLogReader reader = new FixLogReader(new ByteArrayInputStream(recordSyntheticRun()))) {
+            replayer.replay(reader, report -> {});
+        }
+
+        assertEquals(1920, replayer.getReplayedFixes());
+        assertEquals(0, timer.sleeps);
+    }
+}
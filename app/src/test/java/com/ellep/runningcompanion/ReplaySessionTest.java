@@ -0,0 +1,103 @@
+package com.ellep.runningcompanion;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ReplaySessionTest {
+    private static final long START_TIME = 1760000000000L;
+
+    private static class CountingProviders implements LiveLocationProviders {
+        private int stops = 0;
+        private int restarts = 0;
+
+        @Override
+        public void stop() {
+            stops++;
+        }
+
+        @Override
+        public void restart() {
+            restarts++;
+        }
+    }
+
+    private static FixLogSource fixLog(int fixes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (FixLogWriter writer = new FixLogWriter(bytes)) {
+            for (int i = 0; i < fixes; i++) {
+                writer.write(new RunnerLocationReport("gps", START_TIME + i * 1000L, -22.9 + i * 1e-5, -43.2, 700, 3f, 4f, 3f, 0.5f));
+            }
+        }
+        return () -> new FixLogReader(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    public void finishedReplay_restartsTheLiveProviders() throws Exception {
+        CountingProviders providers = new CountingProviders();
+        ReplaySession session = new ReplaySession(providers);
+
+        assertTrue(session.begin(new LocationReplayer(LocationReplayer.AS_FAST_AS_POSSIBLE, null)));
+        assertEquals(1, providers.stops);
+        assertTrue(session.isReplaying());
+        // A second replay is refused while the first runs
+        assertFalse(session.begin(new LocationReplayer(LocationReplayer.AS_FAST_AS_POSSIBLE, null)));
+
+        List<RunnerLocationReport> delivered = new ArrayList<>();
+        assertEquals(50, session.play(fixLog(50), delivered::add));
+        assertEquals(50, delivered.size());
+        assertFalse(session.isReplaying());
+        assertEquals(1, providers.restarts);
+
+        // And the next one can start
+        assertTrue(session.begin(new LocationReplayer(LocationReplayer.AS_FAST_AS_POSSIBLE, null)));
+        session.play(fixLog(5), report -> {});
+        assertEquals(2, providers.stops);
+        assertEquals(2, providers.restarts);
+    }
+
+    @Test
+    public void failedReplay_restartsTheLiveProviders() throws Exception {
+        CountingProviders providers = new CountingProviders();
+        ReplaySession session = new ReplaySession(providers);
+
+        assertTrue(session.begin(new LocationReplayer(LocationReplayer.AS_FAST_AS_POSSIBLE, null)));
+        try {
+            session.play(() -> {
+                throw new IOException("No such file");
+            }, report -> {});
+            fail();
+        } catch (IOException error) {
+            assertEquals("No such file", error.getMessage());
+        }
+
+        assertFalse(session.isReplaying());
+        assertEquals(1, providers.restarts);
+    }
+
+    @Test
+    public void closedSession_leavesTheProvidersStopped() throws Exception {
+        CountingProviders providers = new CountingProviders();
+        ReplaySession session = new ReplaySession(providers);
+
+        assertTrue(session.begin(new LocationReplayer(LocationReplayer.AS_FAST_AS_POSSIBLE, null)));
+        int[] delivered = {0};
+        session.play(fixLog(50), report -> {
+            // Like the service being destroyed during the replay
+            if (++delivered[0] == 10) {
+                session.close();
+            }
+        });
+
+        assertEquals(10, delivered[0]);
+        assertFalse(session.isReplaying());
+        assertEquals(0, providers.restarts);
+        assertFalse(session.begin(new LocationReplayer(LocationReplayer.AS_FAST_AS_POSSIBLE, null)));
+    }
+}
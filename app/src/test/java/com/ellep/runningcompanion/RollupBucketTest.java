@@ -0,0 +1,19 @@
+package com.ellep.runningcompanion;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RollupBucketTest {
+    @Test
+    public void averagePace_isWeightedByDistance() {
+        // 10 km in 50 min and 1 km in 7 min: 57 min over 11 km
+        RollupBucket bucket = new RollupBucket("2026-W42", 2, 11, 57 * 60, 0);
+        assertEquals(Utils.fracMinuteToTime(57.0 / 11), bucket.getAveragePace(), 1e-9);
+    }
+
+    @Test
+    public void averagePace_ofAnEmptyBucketIsZero() {
+        assertEquals(0, new RollupBucket("2026-W42", 0, 0, 0, 0).getAveragePace(), 0);
+    }
+}
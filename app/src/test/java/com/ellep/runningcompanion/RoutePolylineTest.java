@@ -0,0 +1,113 @@
+package com.ellep.runningcompanion;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RoutePolylineTest {
+    private static final double METERS_PER_DEGREE = 111195.0;
+
+    // A wandering run of 3 m steps, about 30 km
+    private static RoutePolyline polyline(int points) {
+        Random random = new Random(6);
+        RoutePolyline polyline = new RoutePolyline();
+        double north = 0;
+        double east = 0;
+        double heading = 0;
+        for (int i = 0; i < points; i++) {
+            polyline.add(-22.9 + north / METERS_PER_DEGREE, -43.2 + east / (METERS_PER_DEGREE * Math.cos(Math.toRadians(-22.9))));
+            heading += random.nextGaussian() * 0.2;
+            north += 3 * Math.cos(heading);
+            east += 3 * Math.sin(heading);
+        }
+        return polyline;
+    }
+
+    private static double distance(float[] a, int i, float[] b, int j) {
+        return Math.hypot(a[i * 2] - b[j * 2], a[i * 2 + 1] - b[j * 2 + 1]);
+    }
+
+    @Test
+    public void coarserLevels_keepFewerPointsFartherApart() {
+        RouteShape shape = polyline(10000).getShape();
+        assertEquals(10000, shape.getCount(0));
+
+        for (int level = 1; level < 10; level++) {
+            assertTrue(shape.getCount(level) <= shape.getCount(level - 1));
+            float[] points = shape.getPoints(level);
+            for (int i = 1; i < shape.getCount(level); i++) {
+                assertTrue(distance(points, i - 1, points, i) >= shape.getTolerance(level) - 1e-3);
+            }
+        }
+    }
+
+    @Test
+    public void everyPoint_staysCloseToEachLevel() {
+        RouteShape shape = polyline(10000).getShape();
+        float[] all = shape.getPoints(0);
+
+        for (int level = 1; level < 10; level++) {
+            // Each level is a subsequence of level 0, every dropped point
+            // is within twice the level's tolerance of the last kept one
+            float[] kept = shape.getPoints(level);
+            int next = 0;
+            int last = -1;
+            double maxError = 0;
+            for (int i = 0; i < shape.getCount(0); i++) {
+                if (next < shape.getCount(level) && kept[next * 2] == all[i * 2] && kept[next * 2 + 1] == all[i * 2 + 1]) {
+                    last = next++;
+                    continue;
+                }
+                assertTrue(last >= 0);
+                maxError = Math.max(maxError, distance(all, i, kept, last));
+            }
+            assertEquals(shape.getCount(level), next);
+            assertTrue("level " + level + " error " + maxError, maxError < 2 * shape.getTolerance(level));
+        }
+    }
+
+    @Test
+    public void selectLevel_picksTheFinestLevelThatFits() {
+        RouteShape shape = polyline(10000).getShape();
+
+        assertEquals(0, shape.selectLevel(0, 10000));
+        assertTrue(shape.selectLevel(0, 9999) > 0);
+        // Levels 1 and 2 keep points 2 and 4 m apart
+        assertEquals(2, shape.selectLevel(3, 10000));
+
+        for (double spacing : new double[]{1, 5, 20, 100}) {
+            for (int maxPoints : new int[]{100, 500, 1000, 5000}) {
+                int level = shape.selectLevel(spacing, maxPoints);
+                assertTrue(shape.getTolerance(level) >= spacing || level == 9);
+                assertTrue(shape.getCount(level) <= maxPoints || level == 9);
+                if (level > 0) {
+                    assertTrue(shape.getTolerance(level - 1) < spacing || shape.getCount(level - 1) > maxPoints);
+                }
+            }
+        }
+
+        // Nothing fits, the coarsest level is the best there is
+        assertEquals(9, shape.selectLevel(1e6, 1));
+    }
+
+    @Test
+    public void shape_isAFrozenView() {
+        RoutePolyline polyline = polyline(100);
+        RouteShape shape = polyline.getShape();
+        assertSame(shape, polyline.getShape());
+
+        polyline.add(-22.8, -43.1);
+        RouteShape next = polyline.getShape();
+        assertNotSame(shape, next);
+        assertEquals(100, shape.getCount(0));
+        assertEquals(101, next.getCount(0));
+        assertEquals((-22.8 + 22.9) * Math.toRadians(6371008.8), next.getLastY(), 1);
+        assertTrue(next.getMaxY() >= next.getLastY());
+
+        polyline.clear();
+        assertTrue(polyline.getShape().isEmpty());
+        assertEquals(100, shape.getCount(0));
+    }
+}
@@ -0,0 +1,146 @@
+package com.ellep.runningcompanion;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RunAnnouncerTest {
+    private final List<String> announcements = new ArrayList<>();
+    private final RunAnnouncer announcer = new RunAnnouncer(announcements::add);
+
+    // Snapshot at the given moving time (s) and distance (km)
+    private static RunnerSnapshot snapshot(long movingTime, double distance, RunSplit lastSplit, boolean paused) {
+        return new RunnerSnapshot(movingTime * 1000, true, paused, movingTime, distance, 5.3, 5.3, lastSplit, 170,
+                true, 3, 4, null, Double.NaN, Double.NaN);
+    }
+
+    private int count(String text) {
+        int count = 0;
+        for (String announcement : announcements) {
+            if (announcement.contains(text)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void numberToTTS_splitsMinutesAndSeconds() {
+        assertEquals("5 e 30", RunAnnouncer.numberToTTS(5.30));
+        assertEquals("4 e 5", RunAnnouncer.numberToTTS(4.05));
+        assertEquals("0 e 45", RunAnnouncer.numberToTTS(0.45));
+    }
+
+    @Test
+    public void numberToTTS_carriesRoundedSecondsIntoMinutes() {
+        assertEquals("6 e 0", RunAnnouncer.numberToTTS(5.596));
+        assertEquals("5 e 59", RunAnnouncer.numberToTTS(5.594));
+    }
+
+    @Test
+    public void timeThresholds_areAnnouncedOnceEach() {
+        // Several snapshots per second, none exactly on a multiple of 60
+        for (long tenths = 0; tenths <= 3050; tenths += 7) {
+            announcer.onSnapshot(snapshot(tenths / 10, tenths / 10 * 0.003, null, false));
+        }
+
+        assertEquals(5, announcements.size());
+        assertEquals(5, count("Distância percorrida"));
+    }
+
+    @Test
+    public void jumpOverSeveralTimeThresholds_isAnnouncedOnce() {
+        announcer.onSnapshot(snapshot(50, 0.15, null, false));
+        announcer.onSnapshot(snapshot(130, 0.39, null, false));
+        announcer.onSnapshot(snapshot(131, 0.39, null, false));
+        assertEquals(1, announcements.size());
+
+        // The next one is the first multiple after the jump
+        announcer.onSnapshot(snapshot(179, 0.54, null, false));
+        assertEquals(1, announcements.size());
+        announcer.onSnapshot(snapshot(180, 0.54, null, false));
+        assertEquals(2, announcements.size());
+    }
+
+    @Test
+    public void splits_areAnnouncedOnceEach() {
+        announcer.setTimeInterval(3600);
+        SplitTracker splits = new SplitTracker(1000);
+        for (long second = 1; second <= 1000; second++) {
+            double meters = second * 3.3;
+            splits.addProgress(second * 1000, meters);
+            announcer.onSnapshot(snapshot(second, meters / 1000, splits.getLastSplit(), false));
+        }
+
+        assertEquals(3, announcements.size());
+        for (int split = 1; split <= 3; split++) {
+            assertEquals(1, count("Parcial " + split + " "));
+        }
+    }
+
+    @Test
+    public void pauseAndResume_repeatNothing() {
+        SplitTracker splits = new SplitTracker(150);
+        long second = 0;
+        for (; second <= 65; second++) {
+            splits.addProgress(second * 1000, second * 3.1);
+            announcer.onSnapshot(snapshot(second, second * 0.0031, splits.getLastSplit(), false));
+        }
+        assertEquals(1, count("Distância percorrida"));
+        assertEquals(1, count("Parcial 1 "));
+        int before = announcements.size();
+
+        // Paused for five minutes: moving time, distance and split stand still
+        for (int i = 0; i < 300; i++) {
+            announcer.onSnapshot(snapshot(second - 1, (second - 1) * 0.0031, splits.getLastSplit(), true));
+        }
+        assertEquals(before, announcements.size());
+
+        // Resumes where it stopped, the next threshold comes at 120 s
+        for (; second < 120; second++) {
+            splits.addProgress(second * 1000, second * 3.1);
+            announcer.onSnapshot(snapshot(second, second * 0.0031, splits.getLastSplit(), false));
+        }
+        assertEquals(1, count("Distância percorrida"));
+        announcer.onSnapshot(snapshot(120, 120 * 0.0031, splits.getLastSplit(), false));
+        assertEquals(2, count("Distância percorrida"));
+        assertEquals(1, count("Parcial 1 "));
+        assertEquals(1, count("Parcial 2 "));
+    }
+
+    @Test
+    public void splitAndTimeTogether_areOneAnnouncement() {
+        RunSplit split = new RunSplit(1, 1000, 60000, 60000, 60000);
+        announcer.onSnapshot(snapshot(59, 0.99, null, false));
+        announcer.onSnapshot(snapshot(60, 1.0, split, false));
+
+        assertEquals(1, announcements.size());
+        assertTrue(announcements.get(0).startsWith("Parcial 1 "));
+        assertTrue(announcements.get(0).contains("Distância percorrida"));
+    }
+
+    @Test
+    public void reset_announcesTheNextRunFromTheStart() {
+        RunSplit split = new RunSplit(1, 1000, 300000, 300000, 300000);
+        announcer.onSnapshot(snapshot(300, 1.0, split, false));
+        assertEquals(1, announcements.size());
+
+        announcer.reset();
+        announcer.onSnapshot(snapshot(61, 0.2, null, false));
+        announcer.onSnapshot(snapshot(301, 1.0, split, false));
+        assertEquals(3, announcements.size());
+        assertEquals(2, count("Parcial 1 "));
+    }
+
+    @Test
+    public void disabled_announcesNothingLater() {
+        announcer.setEnabled(false);
+        announcer.onSnapshot(snapshot(61, 0.2, null, false));
+        announcer.setEnabled(true);
+        announcer.onSnapshot(snapshot(62, 0.2, null, false));
+        assertTrue(announcements.isEmpty());
+    }
+}
@@ -0,0 +1,119 @@
+package com.ellep.runningcompanion;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SegmentMatcherTest {
+    private static final long START_TIME = 1760000000000L;
+    private static final double METERS_PER_DEGREE = 111195.0;
+    private static final double LATITUDE = -22.9;
+    private static final double LONGITUDE = -43.2;
+
+    private static TrackPoint point(long second, double north, double east) {
+        return new TrackPoint(START_TIME + second * 1000, LATITUDE + north / METERS_PER_DEGREE,
+                LONGITUDE + east / (METERS_PER_DEGREE * Math.cos(Math.toRadians(LATITUDE))), Double.NaN);
+    }
+
+    // Straight north at 3 m/s from the given offsets, one point per second
+    private static List<TrackPoint> north(double fromNorth, double toNorth, double east) {
+        List<TrackPoint> track = new ArrayList<>();
+        int seconds = (int) Math.round(Math.abs(toNorth - fromNorth) / 3.0);
+        for (int second = 0; second <= seconds; second++) {
+            track.add(point(second, fromNorth + Math.signum(toNorth - fromNorth) * second * 3.0, east));
+        }
+        return track;
+    }
+
+    // 500 m north from the origin
+    private static Segment straightSegment() {
+        return Segment.fromTrack(1, "reta", north(0, 500, 0));
+    }
+
+    private static List<SegmentEffort> match(Segment segment, List<TrackPoint> track) {
+        return new SegmentMatcher(Collections.singletonList(segment)).match(track);
+    }
+
+    @Test
+    public void passOverTheSegment_isMatched() {
+        Segment segment = straightSegment();
+        List<SegmentEffort> efforts = match(segment, north(-200, 800, 0));
+
+        assertEquals(1, efforts.size());
+        SegmentEffort effort = efforts.get(0);
+        assertSame(segment, effort.getSegment());
+        assertEquals(500, effort.getDistance(), 10);
+        assertEquals(500 / 3.0, effort.getDuration(), 5);
+        assertEquals(START_TIME + 200 / 3 * 1000, effort.getStartTime(), 3000);
+    }
+
+    @Test
+    public void start_mustBeWithinTheRadius() {
+        Segment segment = straightSegment();
+
+        assertEquals(1, match(segment, north(-200, 800, 20)).size());
+        assertTrue(match(segment, north(-200, 800, 40)).isEmpty());
+    }
+
+    @Test
+    public void checkpoints_arePassedInOrder() {
+        // Every checkpoint is passed, but from the end to the start
+        assertTrue(match(straightSegment(), north(800, -200, 0)).isEmpty());
+    }
+
+    @Test
+    public void length_mustBeCloseToTheSegment() {
+        // Zigzags over every checkpoint, covering far more than 120% of the length
+        List<TrackPoint> zigzag = new ArrayList<>();
+        for (int second = 0; second <= 300; second++) {
+            zigzag.add(point(second, -50 + second * 2.0, second % 2 == 0 ? -15 : 15));
+        }
+        assertTrue(match(straightSegment(), zigzag).isEmpty());
+
+        // Same checkpoints, but declared twice as long as the path between them
+        Segment straight = straightSegment();
+        double[] latitudes = new double[straight.getCheckpointCount()];
+        double[] longitudes = new double[straight.getCheckpointCount()];
+        for (int i = 0; i < latitudes.length; i++) {
+            latitudes[i] = straight.getLatitude(i);
+            longitudes[i] = straight.getLongitude(i);
+        }
+        Segment tooLong = new Segment(2, "longa", 1000, latitudes, longitudes);
+        assertTrue(match(tooLong, north(-200, 800, 0)).isEmpty());
+    }
+
+    @Test
+    public void repeatedLaps_matchEachPass() {
+        // Three laps around a 200 m square, the segment being its west side
+        List<TrackPoint> laps = new ArrayList<>();
+        long second = 0;
+        for (int lap = 0; lap < 3; lap++) {
+            for (int meters = 0; meters < 800; meters += 4) {
+                double north = meters < 200 ? meters : meters < 400 ? 200 : meters < 600 ? 600 - meters : 0;
+                double east = meters < 200 ? 0 : meters < 400 ? meters - 200 : meters < 600 ? 200 : 800 - meters;
+                laps.add(point(second++, north, east));
+            }
+        }
+        laps.add(point(second, 0, 0));
+
+        Segment westSide = Segment.fromTrack(1, "lado", north(0, 200, 0));
+        List<SegmentEffort> efforts = match(westSide, laps);
+
+        assertEquals(3, efforts.size());
+        for (int lap = 0; lap < 3; lap++) {
+            SegmentEffort effort = efforts.get(lap);
+            assertEquals(START_TIME + lap * 200000L, effort.getStartTime(), 5000);
+            assertEquals(200, effort.getDistance(), 10);
+        }
+    }
+
+    @Test
+    public void noSegments_matchNothing() {
+        assertTrue(new SegmentMatcher(new ArrayList<>()).match(north(0, 500, 0)).isEmpty());
+        assertTrue(match(straightSegment(), new ArrayList<>()).isEmpty());
+    }
+}
@@ -0,0 +1,82 @@
+package com.ellep.runningcompanion;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SplitTrackerTest {
+    @Test
+    public void crossing_isInterpolatedBetweenUpdates() {
+        SplitTracker tracker = new SplitTracker(1000);
+        assertNull(tracker.addProgress(290000, 980));
+
+        // 1000 m is crossed halfway between 980 m and 1020 m
+        RunSplit split = tracker.addProgress(300000, 1020);
+        assertNotNull(split);
+        assertEquals(1, split.getNumber());
+        assertEquals(1000, split.getDistance(), 0);
+        assertEquals(295000, split.getTime());
+        assertEquals(295000, split.getDuration());
+    }
+
+    @Test
+    public void durations_areBetweenCrossings() {
+        SplitTracker tracker = new SplitTracker(1000);
+        tracker.addProgress(300000, 1000);
+        tracker.addProgress(400000, 1500);
+        RunSplit second = tracker.addProgress(500000, 2000);
+
+        assertEquals(2, second.getNumber());
+        assertEquals(500000, second.getTime());
+        assertEquals(200000, second.getDuration());
+        assertSame(second, tracker.getLastSplit());
+    }
+
+    @Test
+    public void oneJump_crossesSeveralBoundaries() {
+        SplitTracker tracker = new SplitTracker(500);
+        tracker.addProgress(0, 0);
+        RunSplit last = tracker.addProgress(600000, 1500);
+
+        List<RunSplit> splits = tracker.getSplits();
+        assertEquals(3, splits.size());
+        assertSame(last, splits.get(2));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(200000 * (i + 1), splits.get(i).getTime());
+            assertEquals(200000, splits.get(i).getDuration());
+        }
+    }
+
+    @Test
+    public void noProgress_crossesNothing() {
+        SplitTracker tracker = new SplitTracker(1000);
+        tracker.addProgress(100000, 999);
+        assertNull(tracker.addProgress(200000, 999));
+        assertNull(tracker.getLastSplit());
+    }
+
+    @Test
+    public void reset_startsOver() {
+        SplitTracker tracker = new SplitTracker(1000);
+        tracker.addProgress(300000, 1200);
+        tracker.reset();
+
+        assertTrue(tracker.getSplits().isEmpty());
+        RunSplit split = tracker.addProgress(250000, 1000);
+        assertEquals(1, split.getNumber());
+        assertEquals(250000, split.getDuration());
+    }
+
+    @Test
+    public void clockTime_includesPauses() {
+        SplitTracker tracker = new SplitTracker(1000);
+        tracker.addProgress(200000, 5200000, 800);
+
+        // A 60 s pause before the next update, crossing halfway
+        RunSplit split = tracker.addProgress(210000, 5270000, 1200);
+        assertEquals(205000, split.getTime());
+        assertEquals(5235000, split.getClockTime());
+    }
+}
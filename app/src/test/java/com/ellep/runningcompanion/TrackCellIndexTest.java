@@ -0,0 +1,79 @@
+package com.ellep.runningcompanion;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TrackCellIndexTest {
+    private static final long START_TIME = 1760000000000L;
+    private static final double METERS_PER_DEGREE = 111195.0;
+
+    // Straight north from the given offset, one point every 3 m
+    private static List<TrackPoint> north(double fromNorth, double meters, double east) {
+        List<TrackPoint> track = new ArrayList<>();
+        for (int i = 0; i * 3.0 <= meters; i++) {
+            track.add(new TrackPoint(START_TIME + i * 1000L, -22.9 + (fromNorth + i * 3.0) / METERS_PER_DEGREE,
+                    -43.2 + east / METERS_PER_DEGREE, Double.NaN));
+        }
+        return track;
+    }
+
+    @Test
+    public void findRuns_keepsOnlyRunsNearEveryCheckpoint() {
+        Segment segment = Segment.fromTrack(1, "reta", north(0, 2000, 0));
+        TrackCellIndex index = new TrackCellIndex();
+        index.addRun(1, north(-100, 2200, 0));
+        // Starts on the segment but turns off after 500 m
+        index.addRun(2, north(0, 500, 0));
+        // Runs parallel, too far to the east
+        index.addRun(3, north(0, 2000, 1000));
+        index.addRun(4, north(50, 1900, 10));
+
+        assertEquals(new HashSet<>(Arrays.asList(1L, 4L)), index.findRuns(segment));
+    }
+
+    @Test
+    public void cellFile_roundTrips() throws IOException {
+        List<TrackPoint> track = north(0, 2000, 0);
+        Set<Long> cells = TrackCellIndex.getCells(track);
+        assertTrue(cells.size() > 1 && cells.size() < track.size());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TrackCellIndex.writeCells(bytes, cells);
+        assertEquals(8 + cells.size() * 8, bytes.size());
+        Set<Long> read = TrackCellIndex.readCells(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(new ArrayList<>(cells), new ArrayList<>(read));
+
+        // Loading a run from its cells finds the same runs as indexing its track
+        Segment segment = Segment.fromTrack(1, "reta", north(100, 1000, 0));
+        TrackCellIndex fromCells = new TrackCellIndex();
+        fromCells.addRunCells(7, read);
+        TrackCellIndex fromTrack = new TrackCellIndex();
+        fromTrack.addRun(7, track);
+        assertEquals(fromTrack.findRuns(segment), fromCells.findRuns(segment));
+    }
+
+    @Test
+    public void cellFile_rejectsOtherFiles() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TrackWriter writer = new TrackWriter(bytes)) {
+            writer.write(north(0, 0, 0).get(0));
+        }
+
+        try {
+            TrackCellIndex.readCells(new ByteArrayInputStream(bytes.toByteArray()));
+            fail("read a track file as cells");
+        } catch (IOException expected) {
+            assertEquals("Not a cell file", expected.getMessage());
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package com.ellep.runningcompanion;
+
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import static org.junit.Assert.*;
+
+public class TrackExporterTest {
+    private static final long START_TIME = 1760000000000L;
+
+    // Generates a straight track heading north at 3 m/s, without keeping it in memory
+    private static TrackSource syntheticTrack(int points, long intervalMs) {
+        return () -> new TrackInput() {
+            private int index = 0;
+
+            @Override
+            public TrackPoint read() {
+                if (index >= points) {
+                    return null;
+                }
+
+                long elapsed = index * intervalMs;
+                double latitude = -22.9 + (elapsed / 1000.0) * 3.0 / 111195.0;
+                double altitude = index % 7 == 0 ? Double.NaN : 700 + (index % 50) * 0.5;
+                index++;
+                return new TrackPoint(START_TIME + elapsed, latitude, -43.2, altitude);
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    private static List<TrackPoint> readAll(TrackSource source) throws IOException {
+        List<TrackPoint> points = new ArrayList<>();
+        try (TrackInput input = source.open()) {
+            TrackPoint point;
+            while ((point = input.read()) != null) {
+                points.add(point);
+            }
+        }
+        return points;
+    }
+
+    @Test
+    public void trackFile_roundTrip() throws Exception {
+        List<TrackPoint> expected = readAll(syntheticTrack(500, 1000));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TrackWriter writer = new TrackWriter(bytes)) {
+            for (TrackPoint point : expected) {
+                writer.write(point);
+            }
+        }
+
+        List<TrackPoint> actual = readAll(() -> new TrackReader(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTime(), actual.get(i).getTime());
+            assertEquals(expected.get(i).getLatitude(), actual.get(i).getLatitude(), 0);
+            assertEquals(expected.get(i).getLongitude(), actual.get(i).getLongitude(), 0);
+            assertEquals(expected.get(i).hasAltitude(), actual.get(i).hasAltitude());
+        }
+    }
+
+    @Test
+    public void trackFile_keepsRecordedDistance() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TrackWriter writer = new TrackWriter(bytes)) {
+            writer.write(new TrackPoint(START_TIME, -22.9, -43.2, 700, 0));
+            writer.write(new TrackPoint(START_TIME + 1000, -22.9, -43.2, Double.NaN, 3.5));
+        }
+
+        List<TrackPoint> points = readAll(() -> new TrackReader(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(0, points.get(0).getDistance(), 0);
+        assertEquals(3.5, points.get(1).getDistance(), 0);
+        assertEquals(TrackWriter.HEADER_SIZE + 2 * TrackWriter.POINT_SIZE, bytes.size());
+    }
+
+    @Test
+    public void legacyTrackFile_hasNoDistance() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(TrackWriter.LEGACY_MAGIC);
+            output.writeLong(START_TIME);
+            output.writeDouble(-22.9);
+            output.writeDouble(-43.2);
+            output.writeDouble(700);
+        }
+        assertEquals(TrackWriter.HEADER_SIZE + TrackWriter.LEGACY_POINT_SIZE, bytes.size());
+
+        List<TrackPoint> points = readAll(() -> new TrackReader(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(1, points.size());
+        assertEquals(700, points.get(0).getAltitude(), 0);
+        assertFalse(points.get(0).hasDistance());
+    }
+
+    @Test
+    public void gpx_roundTrip() throws Exception {
+        TrackSource source = syntheticTrack(2000, 1000);
+        StringWriter output = new StringWriter();
+        new TrackExporter(1000).writeGpx(source, "Corrida <teste>", output);
+
+        List<TrackPoint> expected = readAll(source);
+        List<TrackPoint> actual = new ArrayList<>();
+        int[] segments = {0};
+        SAXParserFactory.newInstance().newSAXParser().parse(
+                new ByteArrayInputStream(output.toString().getBytes(StandardCharsets.UTF_8)),
+                new DefaultHandler() {
+                    private double latitude;
+                    private double longitude;
+                    private double altitude;
+                    private long time;
+                    private final StringBuilder text = new StringBuilder();
+
+                    @Override
+                    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                        text.setLength(0);
+                        if (qName.equals("trkseg")) {
+                            segments[0]++;
+                        } else if (qName.equals("trkpt")) {
+                            latitude = Double.parseDouble(attributes.getValue("lat"));
+                            longitude = Double.parseDouble(attributes.getValue("lon"));
+                            altitude = Double.NaN;
+                        }
+                    }
+
+                    @Override
+                    public void characters(char[] ch, int start, int length) {
+                        text.append(ch, start, length);
+                    }
+
+                    @Override
+                    public void endElement(String uri, String localName, String qName) {
+                        if (qName.equals("ele")) {
+                            altitude = Double.parseDouble(text.toString());
+                        } else if (qName.equals("time")) {
+                            time = Instant.parse(text.toString()).toEpochMilli();
+                        } else if (qName.equals("trkpt")) {
+                            actual.add(new TrackPoint(time, latitude, longitude, altitude));
+                        }
+                    }
+                });
+
+        // 2000 s at 3 m/s is a little under 6 km
+        assertEquals(6, segments[0]);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTime(), actual.get(i).getTime());
+            assertEquals(expected.get(i).getLatitude(), actual.get(i).getLatitude(), 0);
+            assertEquals(expected.get(i).getLongitude(), actual.get(i).getLongitude(), 0);
+            assertEquals(expected.get(i).hasAltitude(), actual.get(i).hasAltitude());
+            if (expected.get(i).hasAltitude()) {
+                assertEquals(expected.get(i).getAltitude(), actual.get(i).getAltitude(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void tcx_lapsCoverWholeTrack() throws Exception {
+        TrackSource source = syntheticTrack(2000, 1000);
+        StringWriter output = new StringWriter();
+        new TrackExporter(1000).writeTcx(source, output);
+
+        double[] lapTotals = {0, 0};
+        int[] counts = {0, 0};
+        SAXParserFactory.newInstance().newSAXParser().parse(
+                new ByteArrayInputStream(output.toString().getBytes(StandardCharsets.UTF_8)),
+                new DefaultHandler() {
+                    private final StringBuilder text = new StringBuilder();
+                    private boolean inTrack = false;
+
+                    @Override
+                    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                        text.setLength(0);
+                        if (qName.equals("Lap")) {
+                            counts[0]++;
+                        } else if (qName.equals("Track")) {
+                            inTrack = true;
+                        } else if (qName.equals("Trackpoint")) {
+                            counts[1]++;
+                        }
+                    }
+
+                    @Override
+                    public void characters(char[] ch, int start, int length) {
+                        text.append(ch, start, length);
+                    }
+
+                    @Override
+                    public void endElement(String uri, String localName, String qName) {
+                        if (qName.equals("Track")) {
+                            inTrack = false;
+                        } else if (!inTrack && qName.equals("TotalTimeSeconds")) {
+                            lapTotals[0] += Double.parseDouble(text.toString());
+                        } else if (!inTrack && qName.equals("DistanceMeters")) {
+                            lapTotals[1] += Double.parseDouble(text.toString());
+                        }
+                    }
+                });
+
+        assertEquals(6, counts[0]);
+        assertEquals(2000, counts[1]);
+        assertEquals(1999, lapTotals[0], 1e-6);
+        // The track is laid out on a sphere but measured on the ellipsoid
+        assertEquals(1999 * 3.0, lapTotals[1], 1999 * 3.0 * 0.01);
+    }
+
+    @Test
+    public void tcx_lapsAreCutAtRecordedSplitTimes() throws Exception {
+        TrackSource source = syntheticTrack(2000, 1000);
+        List<Double> splits = new ArrayList<>();
+        List<Long> splitTimes = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            splits.add(300.0 + i);
+            splitTimes.add(START_TIME + (i + 1) * 333000L + 500);
+        }
+        StringWriter output = new StringWriter();
+        new TrackExporter(1000).writeTcx(source, splits, splitTimes, output);
+
+        List<ParsedLap> laps = parseTcx(output.toString());
+        assertEquals(6, laps.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(300.0 + i, laps.get(i).seconds, 0);
+            assertEquals(1000, laps.get(i).distance, 0);
+        }
+        // Each lap holds the points between its split times
+        for (int i = 0; i < laps.size(); i++) {
+            long from = i == 0 ? START_TIME : splitTimes.get(i - 1);
+            long to = i < splitTimes.size() ? splitTimes.get(i) : Long.MAX_VALUE;
+            for (long time : laps.get(i).pointTimes) {
+                assertTrue(time >= from && time < to);
+            }
+        }
+        // The last, partial lap has no split and is measured on the track
+        assertEquals(1999 - 1666, laps.get(5).seconds, 1e-6);
+        assertEquals((1999 - 1666) * 3.0, laps.get(5).distance, (1999 - 1666) * 3.0 * 0.01);
+    }
+
+    @Test
+    public void tcx_splitsWithoutTimes_areMeasuredOnTheTrack() throws Exception {
+        List<Double> splits = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            splits.add(300.0 + i);
+        }
+        StringWriter output = new StringWriter();
+        new TrackExporter(1000).writeTcx(syntheticTrack(2000, 1000), splits, new ArrayList<>(), output);
+
+        List<ParsedLap> laps = parseTcx(output.toString());
+        assertEquals(6, laps.size());
+        for (ParsedLap lap : laps) {
+            // Time and distance of the same stretch of the track, about 3 m/s
+            assertEquals(3.0, lap.distance / lap.seconds, 0.05);
+        }
+    }
+
+    @Test
+    public void tcx_jumpOverSeveralBoundaries_closesEveryLap() throws Exception {
+        // 1200 m, a 3000 m jump after a long gap and 900 m more
+        List<TrackPoint> points = new ArrayList<>();
+        double north = 0;
+        for (int second = 0; second <= 700; second++) {
+            points.add(new TrackPoint(START_TIME + second * 1000L, -22.9 + north / 111195.0, -43.2, Double.NaN));
+            north += second == 400 ? 3000 : 3;
+        }
+        StringWriter output = new StringWriter();
+        new TrackExporter(1000).writeTcx(() -> listInput(points), output);
+
+        List<ParsedLap> laps = parseTcx(output.toString());
+        assertEquals(6, laps.size());
+        assertTrue(laps.get(2).pointTimes.isEmpty());
+        assertTrue(laps.get(3).pointTimes.isEmpty());
+        // Every point stays in the lap of its own kilometer
+        int total = 0;
+        for (int i = 0; i < laps.size(); i++) {
+            for (double distance : laps.get(i).pointDistances) {
+                assertEquals(i, (int) Math.floor(distance / 1000));
+            }
+            total += laps.get(i).pointTimes.size();
+        }
+        assertEquals(points.size(), total);
+    }
+
+    @Test
+    public void tcx_jumpOverSeveralSplitTimes_keepsTheirTotals() throws Exception {
+        List<Double> splits = new ArrayList<>();
+        List<Long> splitTimes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            splits.add(300.0);
+        }
+        // The second and third splits end between the same two points
+        splitTimes.add(START_TIME + 333500);
+        splitTimes.add(START_TIME + 666200);
+        splitTimes.add(START_TIME + 666600);
+        splitTimes.add(START_TIME + 999500);
+        StringWriter output = new StringWriter();
+        new TrackExporter(1000).writeTcx(syntheticTrack(1200, 1000), splits, splitTimes, output);
+
+        List<ParsedLap> laps = parseTcx(output.toString());
+        assertEquals(5, laps.size());
+        assertTrue(laps.get(2).pointTimes.isEmpty());
+        double seconds = 0;
+        for (int i = 0; i < 4; i++) {
+            seconds += laps.get(i).seconds;
+        }
+        assertEquals(1200, seconds, 0);
+    }
+
+    @Test
+    public void gpx_longTrackIsStreamed() throws Exception {
+        // Four hours at 5 Hz, only the written size is kept
+        TrackSource source = syntheticTrack(4 * 3600 * 5, 200);
+        CountingWriter output = new CountingWriter();
+        new TrackExporter(1000).writeGpx(source, "Longa", output);
+
+        assertTrue(output.count > 4 * 3600 * 5 * 60);
+    }
+
+    private static TrackInput listInput(List<TrackPoint> points) {
+        Iterator<TrackPoint> iterator = points.iterator();
+        return new TrackInput() {
+            @Override
+            public TrackPoint read() {
+                return iterator.hasNext() ? iterator.next() : null;
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    private static List<ParsedLap> parseTcx(String tcx) throws Exception {
+        List<ParsedLap> laps = new ArrayList<>();
+        SAXParserFactory.newInstance().newSAXParser().parse(
+                new ByteArrayInputStream(tcx.getBytes(StandardCharsets.UTF_8)),
+                new DefaultHandler() {
+                    private final StringBuilder text = new StringBuilder();
+                    private boolean inTrack = false;
+
+                    @Override
+                    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                        text.setLength(0);
+                        if (qName.equals("Lap")) {
+                            laps.add(new ParsedLap());
+                        } else if (qName.equals("Track")) {
+                            inTrack = true;
+                        }
+                    }
+
+                    @Override
+                    public void characters(char[] ch, int start, int length) {
+                        text.append(ch, start, length);
+                    }
+
+                    @Override
+                    public void endElement(String uri, String localName, String qName) {
+                        ParsedLap lap = laps.isEmpty() ? null : laps.get(laps.size() - 1);
+                        if (qName.equals("Track")) {
+                            inTrack = false;
+                        } else if (qName.equals("Time")) {
+                            lap.pointTimes.add(Instant.parse(text.toString()).toEpochMilli());
+                        } else if (inTrack && qName.equals("DistanceMeters")) {
+                            lap.pointDistances.add(Double.parseDouble(text.toString()));
+                        } else if (qName.equals("TotalTimeSeconds")) {
+                            lap.seconds = Double.parseDouble(text.toString());
+                        } else if (qName.equals("DistanceMeters")) {
+                            lap.distance = Double.parseDouble(text.toString());
+                        }
+                    }
+                });
+        return laps;
+    }
+
+    private static class ParsedLap {
+        private double seconds;
+        private double distance;
+        private final List<Long> pointTimes = new ArrayList<>();
+        private final List<Double> pointDistances = new ArrayList<>();
+    }
+
+    private static class CountingWriter extends Writer {
+        private long count = 0;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,95 @@
+package com.ellep.runningcompanion;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class WallTimeTest {
+    // Fixes in elapsed realtime, about 2 hours after boot
+    private static final long BOOT_TIME = 7200000L;
+    // Monday, 13 October 2025 at 12:00 UTC
+    private static final long WALL_OFFSET = 1760356800000L - BOOT_TIME;
+    private static final double METERS_PER_DEGREE = 111195.0;
+
+    private static List<RunnerLocationReport> fixes() {
+        Random random = new Random(8);
+        List<RunnerLocationReport> fixes = new ArrayList<>();
+        for (int second = 0; second < 300; second++) {
+            double latitude = -22.9 + (second * 3.0 + random.nextGaussian()) / METERS_PER_DEGREE;
+            fixes.add(new RunnerLocationReport("gps", BOOT_TIME + second * 1000L, latitude, -43.2, 700, 3f, 4f, 3f, 0.5f));
+        }
+        return fixes;
+    }
+
+    // Delivers each fix when the clock reads its time plus the given delay
+    private static RunnerLocationManager replay(long[] delays) {
+        ReplayClock clock = new ReplayClock();
+        clock.setWallOffset(WALL_OFFSET);
+        RunnerLocationManager manager = new RunnerLocationManager(clock);
+        manager.startRun(BOOT_TIME);
+
+        List<RunnerLocationReport> fixes = fixes();
+        long now = BOOT_TIME;
+        for (int i = 0; i < fixes.size(); i++) {
+            now = Math.max(now, fixes.get(i).getTime() + delays[i]);
+            clock.setTime(now);
+            manager.addLocationReport(fixes.get(i));
+        }
+        clock.setTime(BOOT_TIME + 310000);
+        return manager;
+    }
+
+    @Test
+    public void timeGroups_followTheFixTimeNotTheArrival() {
+        long[] onTime = new long[300];
+        long[] late = new long[300];
+        Random random = new Random(2);
+        for (int i = 0; i < late.length; i++) {
+            // Fixes arriving up to 4 s late, often in bursts
+            late[i] = random.nextInt(4000);
+        }
+
+        RunnerLocationManager expected = replay(onTime);
+        RunnerLocationManager actual = replay(late);
+
+        assertEquals(expected.getRunDistance(), actual.getRunDistance(), 0);
+        assertEquals(expected.getMovingTime(), actual.getMovingTime());
+        List<TrackPoint> expectedTrack = expected.getRunTrack();
+        List<TrackPoint> actualTrack = actual.getRunTrack();
+        assertEquals(expectedTrack.size(), actualTrack.size());
+        for (int i = 0; i < expectedTrack.size(); i++) {
+            assertEquals(expectedTrack.get(i).getTime(), actualTrack.get(i).getTime());
+            assertEquals(expectedTrack.get(i).getLatitude(), actualTrack.get(i).getLatitude(), 0);
+        }
+    }
+
+    @Test
+    public void storedTimes_areWallTimes() {
+        RunnerLocationManager manager = replay(new long[300]);
+
+        // The history entry is keyed by the wall time of the start
+        long when = manager.toWallTime(BOOT_TIME);
+        assertEquals(1760356800000L, when);
+
+        // Tracks are stored shifted, the run itself stays in clock time
+        List<TrackPoint> runTrack = manager.getRunTrack();
+        List<TrackPoint> wallTrack = manager.getWallTrack();
+        assertEquals(runTrack.size(), wallTrack.size());
+        for (int i = 0; i < runTrack.size(); i++) {
+            assertTrue(runTrack.get(i).getTime() < BOOT_TIME + 300000);
+            assertEquals(runTrack.get(i).getTime() + WALL_OFFSET, wallTrack.get(i).getTime());
+            assertEquals(runTrack.get(i).getLongitude(), wallTrack.get(i).getLongitude(), 0);
+        }
+
+        // Rollups land in the run's week, not in the first days of 1970
+        assertEquals("2025-W42", HistoryRollups.getKey(HistoryRollups.WEEK, when));
+        assertEquals("2025-10", HistoryRollups.getKey(HistoryRollups.MONTH, wallTrack.get(wallTrack.size() - 1).getTime()));
+        long first = wallTrack.get(0).getTime();
+        assertTrue(first >= 1760356800000L && first < 1760356800000L + 5000);
+        assertEquals("2025", HistoryRollups.getKey(HistoryRollups.YEAR, first));
+    }
+}